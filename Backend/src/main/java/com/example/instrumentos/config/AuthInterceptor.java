@@ -9,6 +9,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import java.util.HashMap;
@@ -32,6 +33,11 @@ public class AuthInterceptor implements HandlerInterceptor {
 
         log.info("AuthInterceptor: path={}, method={}, X-User-Id={}", path, method, userId);
 
+        //el preflight de CORS no lleva el encabezado; la configuracion de CORS decide si se permite
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+
         //rutas que no requieren autenticacion
         if (isPublicRoute(path, method)) {
             return true;
@@ -103,6 +109,36 @@ public class AuthInterceptor implements HandlerInterceptor {
             return !method.equalsIgnoreCase("GET"); // Solo GET es público
         }
 
+        //metricas y administracion del catalogo en memoria
+        if (path.startsWith("/api/catalogo")) {
+            return true;
+        }
+
+        //metricas de la recepcion asincronica de pedidos
+        if (path.startsWith("/api/pedidos/recepcion/metricas")) {
+            return true;
+        }
+
+        //exportacion de pedidos
+        if (path.startsWith("/api/pedidos/export") && method.equalsIgnoreCase("GET")) {
+            return true;
+        }
+
+        //vencimiento manual de pedidos pendientes
+        if (path.startsWith("/api/pedidos/vencer")) {
+            return true;
+        }
+
+        //cambio de estado de varios pedidos a la vez
+        if (path.equals("/api/pedidos/estado") && method.equalsIgnoreCase("PATCH")) {
+            return true;
+        }
+
+        //reportes de ventas y su reconstruccion
+        if (path.startsWith("/api/reportes")) {
+            return true;
+        }
+
         //gestion de usuarios
         if (path.startsWith("/api/usuarios") &&
                 !path.startsWith("/api/usuarios/login") &&
@@ -2,6 +2,8 @@ package com.example.instrumentos.config;
 
 import com.example.instrumentos.model.*;
 import com.example.instrumentos.repository.*;
+import com.example.instrumentos.service.PedidoService;
+import com.example.instrumentos.service.VentasDiariasService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -26,6 +28,11 @@ public class DataInitializer implements CommandLineRunner {
     private final CategoriaInstrumentoRepository categoriaRepository;
     private final InstrumentoRepository instrumentoRepository;
     private final HistorialPrecioRepository historialPrecioRepository;
+    private final PedidoRepository pedidoRepository;
+    private final DetallePedidoRepository detallePedidoRepository;
+    private final PedidoService pedidoService;
+    private final VentaDiariaRepository ventaDiariaRepository;
+    private final VentasDiariasService ventasDiariasService;
     private final ResourceLoader resourceLoader;
     private final ObjectMapper objectMapper;
 
@@ -43,6 +50,18 @@ public class DataInitializer implements CommandLineRunner {
 
         // Cargar instrumentos desde JSON
         loadInstrumentosFromJson();
+
+        // Completar el precio vigente de instrumentos cargados antes de desnormalizarlo
+        completarPreciosActuales();
+
+        // Guardar precio y total en los pedidos creados antes de registrarlos
+        completarPreciosPedidos();
+
+        // Estado actual desnormalizado de los pedidos creados antes de la columna
+        completarEstadosPedidos();
+
+        // Ventas diarias de los pedidos creados antes de la tabla
+        completarVentasDiarias();
     }
 
     private void inicializarRoles() {
@@ -127,12 +146,18 @@ public class DataInitializer implements CommandLineRunner {
                         CategoriaInstrumento categoria = determinarCategoria(instrumento.getDenominacion());
                         instrumento.setCategoriaInstrumento(categoria);
 
+                        // Precio vigente, con la misma fecha que su registro en el historial
+                        Double precio = Double.parseDouble(instrumentoNode.get("precio").asText());
+                        Date fechaPrecio = new Date();
+                        instrumento.setPrecioActual(precio);
+                        instrumento.setFechaPrecioActual(fechaPrecio);
+
                         // Guardar instrumento
                         instrumento = instrumentoRepository.save(instrumento);
 
                         // Crear historial de precio
-                        Double precio = Double.parseDouble(instrumentoNode.get("precio").asText());
                         HistorialPrecioInstrumento historialPrecio = new HistorialPrecioInstrumento(instrumento, precio);
+                        historialPrecio.setFecha(fechaPrecio);
                         historialPrecioRepository.save(historialPrecio);
 
                         count++;
@@ -150,6 +175,35 @@ public class DataInitializer implements CommandLineRunner {
         }
     }
 
+    private void completarPreciosActuales() {
+        if (instrumentoRepository.countSinPrecioActual() > 0) {
+            log.info("Recalculando precio vigente de instrumentos desde el historial...");
+            int actualizados = instrumentoRepository.recalcularPreciosActuales();
+            log.info("Precio vigente recalculado para {} instrumentos", actualizados);
+        }
+    }
+
+    private void completarPreciosPedidos() {
+        if (detallePedidoRepository.countBySubtotalIsNull() > 0 || pedidoRepository.countByTotalPedidoIsNull() > 0) {
+            log.info("Completando precio unitario y total de pedidos existentes...");
+            pedidoService.completarPreciosPedidos();
+        }
+    }
+
+    private void completarEstadosPedidos() {
+        if (pedidoRepository.countByEstadoActualIsNull() > 0) {
+            int actualizados = pedidoRepository.completarEstadosActuales();
+            log.info("Estado actual completado en {} pedidos", actualizados);
+        }
+    }
+
+    private void completarVentasDiarias() {
+        if (ventaDiariaRepository.count() == 0 && pedidoRepository.count() > 0) {
+            log.info("Calculando ventas diarias de los pedidos existentes...");
+            ventasDiariasService.reconstruirTodo();
+        }
+    }
+
     private CategoriaInstrumento determinarCategoria(String nombreInstrumento) {
         String nombre = nombreInstrumento.toLowerCase();
 
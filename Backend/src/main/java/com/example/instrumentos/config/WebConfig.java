@@ -18,19 +18,20 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://localhost:3000")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS")
                 .allowedHeaders("*")
-                .exposedHeaders("X-User-Id")
+                .exposedHeaders("X-User-Id", "ETag", "Idempotent-Replayed")
                 .allowCredentials(true);
     }
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // Los patrones se comparan con la ruta dentro de la aplicación, sin el context-path (/api)
         registry.addInterceptor(authInterceptor)
-                .addPathPatterns("/api/**")
+                .addPathPatterns("/**")
                 .excludePathPatterns(
-                        "/api/error",
-                        "/api/favicon.ico",
-                        "/api/usuarios/login",
-                        "/api/usuarios/registro"
+                        "/error",
+                        "/favicon.ico",
+                        "/usuarios/login",
+                        "/usuarios/registro"
                 );
     }
 }
@@ -0,0 +1,101 @@
+package com.example.instrumentos.controller;
+
+import com.example.instrumentos.service.CatalogoSerializado;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+// ETags fuertes derivados de la versión del catálogo y Cache-Control de las lecturas públicas.
+// "no-cache" obliga a revalidar en cada uso; la revalidación con If-None-Match se contesta con 304
+// comparando sólo la versión, sin leer el catálogo ni serializar JSON.
+// La variante gzip es otra representación y lleva su propio ETag (sufijo "-gz"); If-None-Match acepta cualquiera.
+final class CacheHttp {
+
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePublic();
+
+    private CacheHttp() {
+    }
+
+    static String etag(String recurso, long version) {
+        return "\"" + recurso + "-" + version + "\"";
+    }
+
+    // ETag (de cualquiera de las dos variantes) que el cliente ya tiene, o null si hay que enviar el cuerpo
+    static String vigente(WebRequest request, String etag) {
+        String[] valores = request.getHeaderValues(HttpHeaders.IF_NONE_MATCH);
+        if (valores == null) {
+            return null;
+        }
+        String gzip = etagGzip(etag);
+        for (String valor : valores) {
+            for (String candidato : valor.split(",")) {
+                // If-None-Match usa comparación débil: W/ no cuenta
+                String limpio = candidato.trim();
+                if (limpio.startsWith("W/")) {
+                    limpio = limpio.substring(2);
+                }
+                if (limpio.equals(etag) || limpio.equals("*")) {
+                    return etag;
+                }
+                if (limpio.equals(gzip)) {
+                    return gzip;
+                }
+            }
+        }
+        return null;
+    }
+
+    static <T> ResponseEntity<T> noModificado(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CACHE_CONTROL).build();
+    }
+
+    static <T> ResponseEntity<T> ok(String etag, T cuerpo) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(CACHE_CONTROL).body(cuerpo);
+    }
+
+    // Bytes ya serializados; la variante gzip se envía tal cual si el cliente la acepta
+    static ResponseEntity<byte[]> serializado(String etag, CatalogoSerializado.Cuerpo cuerpo, WebRequest request) {
+        boolean gzip = cuerpo.getGzip() != null && aceptaGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok()
+                .eTag(gzip ? etagGzip(etag) : etag)
+                .cacheControl(CACHE_CONTROL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(cuerpo.getGzip());
+        }
+        return respuesta.body(cuerpo.getJson());
+    }
+
+    private static String etagGzip(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    private static boolean aceptaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String codificacion : acceptEncoding.split(",")) {
+            String[] partes = codificacion.trim().split(";");
+            String nombre = partes[0].trim();
+            if (!nombre.equalsIgnoreCase("gzip") && !nombre.equals("*")) {
+                continue;
+            }
+            // gzip;q=0 significa que no se acepta
+            boolean rechazada = false;
+            for (int i = 1; i < partes.length; i++) {
+                String parametro = partes[i].trim().replace(" ", "");
+                if (parametro.matches("q=0(\\.0*)?")) {
+                    rechazada = true;
+                }
+            }
+            if (!rechazada) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
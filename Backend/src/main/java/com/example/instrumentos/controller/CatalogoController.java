@@ -0,0 +1,23 @@
+package com.example.instrumentos.controller;
+
+import com.example.instrumentos.dto.CatalogoCacheMetricasDTO;
+import com.example.instrumentos.service.CatalogoCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/catalogo")
+@RequiredArgsConstructor
+public class CatalogoController {
+
+    private final CatalogoCache catalogoCache;
+
+    // Métricas del catálogo en memoria (aciertos, fallos y tiempos de reconstrucción)
+    @GetMapping("/metricas")
+    public ResponseEntity<CatalogoCacheMetricasDTO> getMetricas() {
+        return ResponseEntity.ok(catalogoCache.getMetricas());
+    }
+}
@@ -1,13 +1,15 @@
 package com.example.instrumentos.controller;
 
 import com.example.instrumentos.model.CategoriaInstrumento;
+import com.example.instrumentos.service.CatalogoSerializado;
 import com.example.instrumentos.service.CategoriaService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/categorias")
@@ -15,16 +17,31 @@ import java.util.List;
 public class CategoriaController {
 
     private final CategoriaService categoriaService;
+    private final CatalogoSerializado catalogoSerializado;
 
     @GetMapping
-    public ResponseEntity<List<CategoriaInstrumento>> getAllCategorias() {
-        return ResponseEntity.ok(categoriaService.findAll());
+    public ResponseEntity<?> getAllCategorias(WebRequest request) {
+        String etag = CacheHttp.etag("categorias", categoriaService.getVersionCategorias());
+        String vigente = CacheHttp.vigente(request, etag);
+        if (vigente != null) {
+            return CacheHttp.noModificado(vigente);
+        }
+        Optional<CatalogoSerializado.Cuerpo> serializado = catalogoSerializado.findCategorias();
+        if (serializado.isPresent()) {
+            return CacheHttp.serializado(etag, serializado.get(), request);
+        }
+        return CacheHttp.ok(etag, categoriaService.findAll());
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<CategoriaInstrumento> getCategoriaById(@PathVariable Long id) {
+    public ResponseEntity<CategoriaInstrumento> getCategoriaById(@PathVariable Long id, WebRequest request) {
+        String etag = CacheHttp.etag("categorias", categoriaService.getVersionCategorias());
+        String vigente = CacheHttp.vigente(request, etag);
+        if (vigente != null) {
+            return CacheHttp.noModificado(vigente);
+        }
         return categoriaService.findById(id)
-                .map(ResponseEntity::ok)
+                .map(categoria -> CacheHttp.ok(etag, categoria))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -1,17 +1,30 @@
 package com.example.instrumentos.controller;
 
 import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.service.ActualizacionPreciosService;
+import com.example.instrumentos.service.ArchivoPreciosService;
+import com.example.instrumentos.service.BusquedaService;
+import com.example.instrumentos.service.CatalogoSerializado;
+import com.example.instrumentos.service.FacetaService;
 import com.example.instrumentos.service.InstrumentoService;
+import com.example.instrumentos.service.PrecioTimelineService;
+import com.example.instrumentos.service.SeriePreciosService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.example.instrumentos.dto.ActualizacionPreciosDTO;
 import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.dto.PaginaDTO;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/instrumentos")
@@ -20,6 +33,13 @@ import java.util.stream.Collectors;
 public class InstrumentoController {
 
     private final InstrumentoService instrumentoService;
+    private final BusquedaService busquedaService;
+    private final FacetaService facetaService;
+    private final JsonStreaming jsonStreaming;
+    private final CatalogoSerializado catalogoSerializado;
+    private final ArchivoPreciosService archivoPreciosService;
+    private final SeriePreciosService seriePreciosService;
+    private final ActualizacionPreciosService actualizacionPreciosService;
 
 //    @GetMapping
 //    public ResponseEntity<List<Instrumento>> getAllInstrumentos(
@@ -42,26 +62,136 @@ public class InstrumentoController {
 //                .orElse(ResponseEntity.notFound().build());
 //    }
 
+    // Paginado por cursor; todos=true devuelve la lista completa (compatibilidad)
     @GetMapping
-    public ResponseEntity<List<InstrumentoRequestDTO>> getAllInstrumentos(@RequestParam(required = false) Long idCategoria) {
-        List<Instrumento> instrumentos = (idCategoria != null)
-                ? instrumentoService.findByCategoria(idCategoria)
-                : instrumentoService.findAll();
-
-        List<InstrumentoRequestDTO> dtos = instrumentos.stream()
-                .map(instrumentoService::toInstrumentoRequest) // <--- ACA!
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(dtos);
+    public ResponseEntity<?> getAllInstrumentos(
+            @RequestParam(required = false) Long idCategoria,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "false") boolean todos,
+            @RequestParam(required = false) String asOf,
+            WebRequest request) {
+        if (asOf != null) {
+            return getInstrumentosAl(idCategoria, cursor, size, todos, asOf);
+        }
+
+        // La versión cubre todo el catálogo: si no cambió, 304 sin leer ni serializar
+        String etag = CacheHttp.etag("catalogo", instrumentoService.getVersionCatalogo());
+        String vigente = CacheHttp.vigente(request, etag);
+        if (vigente != null) {
+            return CacheHttp.noModificado(vigente);
+        }
+
+        if (!todos) {
+            try {
+                return CacheHttp.ok(etag, instrumentoService.findCatalogoPagina(idCategoria, cursor, size));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        }
+
+        // Bytes ya serializados si están al día; si no, serialización normal (se regeneran en segundo plano)
+        Optional<CatalogoSerializado.Cuerpo> serializado = (idCategoria != null)
+                ? catalogoSerializado.findCategoria(idCategoria)
+                : catalogoSerializado.findCatalogo();
+        if (serializado.isPresent()) {
+            return CacheHttp.serializado(etag, serializado.get(), request);
+        }
+
+        List<InstrumentoRequestDTO> dtos = (idCategoria != null)
+                ? instrumentoService.findCatalogoByCategoria(idCategoria)
+                : instrumentoService.findAllCatalogo();
+        return CacheHttp.ok(etag, dtos);
+    }
+
+    // Vista histórica del catálogo con los precios vigentes en la fecha asOf (sin ETag ni bytes precalculados)
+    private ResponseEntity<?> getInstrumentosAl(Long idCategoria, String cursor, Integer size, boolean todos, String asOf) {
+        try {
+            Date fecha = PrecioTimelineService.parsearFecha(asOf, true);
+            if (!todos) {
+                PaginaDTO<InstrumentoRequestDTO> pagina = instrumentoService.findCatalogoPagina(idCategoria, cursor, size);
+                return ResponseEntity.ok(new PaginaDTO<>(instrumentoService.conPrecioAl(pagina.getItems(), fecha),
+                        pagina.getNext(), pagina.getSize()));
+            }
+            List<InstrumentoRequestDTO> dtos = (idCategoria != null)
+                    ? instrumentoService.findCatalogoByCategoria(idCategoria)
+                    : instrumentoService.findAllCatalogo();
+            return ResponseEntity.ok(instrumentoService.conPrecioAl(dtos, fecha));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Catálogo completo escrito en streaming, elemento por elemento (?stream=true)
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamInstrumentos(@RequestParam(required = false) Long idCategoria) {
+        return jsonStreaming.<InstrumentoRequestDTO>respuesta(accion -> (idCategoria != null
+                ? instrumentoService.findCatalogoByCategoria(idCategoria)
+                : instrumentoService.findAllCatalogo()).forEach(accion));
+    }
+
+    // Búsqueda de texto completo por relevancia (denominación, marca y descripción)
+    @GetMapping("/search")
+    public ResponseEntity<?> buscarInstrumentos(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit) {
+        return busquedaService.buscar(q, limit)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(Map.of("error", "El índice de búsqueda se está construyendo")));
+    }
+
+    // Filtrado facetado (categoría, marca, rango de precio, stock) con conteos por faceta
+    @GetMapping("/facetas")
+    public ResponseEntity<?> filtrarInstrumentos(
+            @RequestParam(required = false) Set<Long> categoria,
+            @RequestParam(required = false) Set<String> marca,
+            @RequestParam(required = false) Double precioMin,
+            @RequestParam(required = false) Double precioMax,
+            @RequestParam(defaultValue = "false") boolean enStock,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(facetaService.filtrar(categoria, marca, precioMin, precioMax, enStock, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<InstrumentoRequestDTO> getInstrumentoById(@PathVariable Long id) {
-        return instrumentoService.findById(id)
-                .map(instrumentoService::toInstrumentoRequest) // <--- ACA!
-                .map(ResponseEntity::ok)
+    public ResponseEntity<?> getInstrumentoById(@PathVariable Long id, WebRequest request) {
+        String etag = CacheHttp.etag("instrumento-" + id, instrumentoService.getVersionInstrumento(id));
+        String vigente = CacheHttp.vigente(request, etag);
+        if (vigente != null) {
+            return CacheHttp.noModificado(vigente);
+        }
+        Optional<CatalogoSerializado.Cuerpo> serializado = catalogoSerializado.findInstrumento(id);
+        if (serializado.isPresent()) {
+            return CacheHttp.serializado(etag, serializado.get(), request);
+        }
+        return instrumentoService.findCatalogoById(id)
+                .<ResponseEntity<?>>map(dto -> CacheHttp.ok(etag, dto))
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Historial de precios para gráficos, reducido a lo sumo a "points" puntos
+    @GetMapping("/{id}/precios")
+    public ResponseEntity<?> getSeriePrecios(
+            @PathVariable Long id,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) Integer points) {
+        try {
+            Date desde = from != null ? PrecioTimelineService.parsearFecha(from, false) : null;
+            Date hasta = to != null ? PrecioTimelineService.parsearFecha(to, true) : null;
+            return seriePreciosService.findSerie(id, desde, hasta, points)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
 
 
     @PostMapping
@@ -122,6 +252,29 @@ public class InstrumentoController {
         }
     }
 
+    // Cambio masivo de precios (lista explícita o regla por categoría/marca y porcentaje) en una transacción
+    @PatchMapping("/precios")
+    public ResponseEntity<?> updatePrecios(@RequestBody ActualizacionPreciosDTO solicitud) {
+        try {
+            return ResponseEntity.ok(actualizacionPreciosService.actualizar(solicitud));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Reconstruir el precio vigente de todos los instrumentos desde el historial
+    @PostMapping("/precios/recalcular")
+    public ResponseEntity<?> recalcularPrecios() {
+        int actualizados = instrumentoService.recalcularPreciosActuales();
+        return ResponseEntity.ok(Map.of("actualizados", actualizados));
+    }
+
+    // Archivar ya los precios reemplazados más viejos que el horizonte (además del job programado)
+    @PostMapping("/precios/archivar")
+    public ResponseEntity<?> archivarPrecios() {
+        return ResponseEntity.ok(Map.of("archivados", archivoPreciosService.archivar()));
+    }
+
     // Endpoint adicional para reponer stock
     @PatchMapping("/{id}/stock")
     public ResponseEntity<?> updateStock(@PathVariable Long id, @RequestBody Map<String, Integer> body) {
@@ -0,0 +1,61 @@
+package com.example.instrumentos.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// Respuestas JSON (array) escritas elemento por elemento con un JsonGenerator a medida que llegan
+// las filas, en lugar de armar la lista completa antes de serializarla.
+// Se vacía el buffer cada FILAS_POR_FLUSH elementos: el cliente recibe los primeros bytes
+// mientras la consulta sigue corriendo.
+@Component
+@Slf4j
+class JsonStreaming {
+
+    private static final int FILAS_POR_FLUSH = 100;
+
+    private final ObjectWriter writer;
+
+    JsonStreaming(ObjectMapper objectMapper) {
+        // Sin flush por elemento: el flush lo decide el recorrido
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // El productor recibe el consumidor que escribe cada elemento en la respuesta
+    <T> ResponseEntity<StreamingResponseBody> respuesta(Consumer<Consumer<T>> productor) {
+        StreamingResponseBody cuerpo = salida -> {
+            try (JsonGenerator generador = writer.createGenerator(salida)) {
+                generador.writeStartArray();
+                int[] escritos = {0};
+                productor.accept(elemento -> escribir(generador, elemento, ++escritos[0]));
+                generador.writeEndArray();
+            } catch (UncheckedIOException e) {
+                // Normalmente el cliente cortó la conexión: la respuesta ya está comprometida
+                log.warn("Streaming JSON interrumpido: {}", e.getMessage());
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cuerpo);
+    }
+
+    private void escribir(JsonGenerator generador, Object elemento, int escritos) {
+        try {
+            writer.writeValue(generador, elemento);
+            if (escritos % FILAS_POR_FLUSH == 0) {
+                generador.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
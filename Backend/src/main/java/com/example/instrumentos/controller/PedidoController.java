@@ -1,18 +1,42 @@
 package com.example.instrumentos.controller;
 
+import com.example.instrumentos.dto.CambioEstadosDTO;
+import com.example.instrumentos.dto.PedidoDTO;
+import com.example.instrumentos.dto.RecepcionPedidosMetricasDTO;
+import com.example.instrumentos.dto.SolicitudPedidoDTO;
 import com.example.instrumentos.model.Pedido;
 import com.example.instrumentos.model.Usuario;
+import com.example.instrumentos.service.EstadosPedido;
+import com.example.instrumentos.service.ExportacionPedidosService;
+import com.example.instrumentos.service.IdempotenciaService;
 import com.example.instrumentos.service.PedidoService;
+import com.example.instrumentos.service.PrecioTimelineService;
+import com.example.instrumentos.service.RecepcionPedidosService;
+import com.example.instrumentos.service.VencimientoPedidosService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/pedidos")
@@ -21,25 +45,110 @@ import java.util.Map;
 public class PedidoController {
 
     private final PedidoService pedidoService;
+    private final JsonStreaming jsonStreaming;
+    private final IdempotenciaService idempotenciaService;
+    private final RecepcionPedidosService recepcionPedidosService;
+    private final ExportacionPedidosService exportacionPedidosService;
+    private final VencimientoPedidosService vencimientoPedidosService;
+    private final ObjectMapper objectMapper;
 
-    // Obtener todos los pedidos
+    // Tope del long polling de /pedidos/solicitudes/{id}
+    private static final long ESPERA_MAXIMA_MS = 30_000;
+
+    // Obtener pedidos paginados por cursor; todos=true devuelve la lista completa (compatibilidad)
     @GetMapping
-    public ResponseEntity<List<Pedido>> getAllPedidos() {
-        return ResponseEntity.ok(pedidoService.findAll());
+    public ResponseEntity<?> getAllPedidos(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String estado,
+            @RequestParam(defaultValue = "false") boolean todos) {
+        try {
+            if (todos) {
+                return ResponseEntity.ok(pedidoService.findAll(estado));
+            }
+            return ResponseEntity.ok(pedidoService.findPagina(estado, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return crearRespuestaError(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // Todos los pedidos leídos con cursor de la base y escritos en streaming (?stream=true)
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamPedidos() {
+        return jsonStreaming.<PedidoDTO>respuesta(pedidoService::forEachPedido);
+    }
+
+    // Pedidos del rango con sus detalles y estado actual, en orden de fecha, escritos a medida que se leen.
+    // Comprimido con gzip al vuelo si el cliente lo acepta (Accept-Encoding)
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportarPedidos(
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (!"csv".equalsIgnoreCase(format)) {
+            return errorExportacion("Formato no soportado: " + format + ". Valores posibles: csv");
+        }
+        Date desde;
+        Date hasta;
+        try {
+            desde = PrecioTimelineService.parsearFecha(from, false);
+            hasta = PrecioTimelineService.parsearFecha(to, true);
+        } catch (IllegalArgumentException e) {
+            return errorExportacion(e.getMessage());
+        }
+        if (desde.after(hasta)) {
+            return errorExportacion("La fecha desde no puede ser posterior a hasta");
+        }
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        StreamingResponseBody cuerpo = salida -> {
+            OutputStream destino = gzip ? new GZIPOutputStream(salida, 8192) : salida;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 16384)) {
+                exportacionPedidosService.exportarCsv(desde, hasta, writer);
+            }
+        };
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"pedidos_" + from + "_" + to + ".csv\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return respuesta.body(cuerpo);
+    }
+
+    // Mismo cuerpo que crearRespuestaError; la respuesta de la exportación siempre es un StreamingResponseBody
+    private ResponseEntity<StreamingResponseBody> errorExportacion(String mensaje) {
+        Map<String, String> error = Map.of("error", mensaje);
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                .body(salida -> objectMapper.writeValue(salida, error));
     }
 
     // Obtener pedidos por usuario
     @GetMapping("/usuario/{usuarioId}")
-    public ResponseEntity<List<Pedido>> getPedidosByUsuario(@PathVariable Long usuarioId) {
-        List<Pedido> pedidos = pedidoService.findByUsuarioId(usuarioId);
-        return ResponseEntity.ok(pedidos);
+    public ResponseEntity<?> getPedidosByUsuario(
+            @PathVariable Long usuarioId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "false") boolean todos) {
+        if (todos) {
+            List<PedidoDTO> pedidos = pedidoService.findByUsuarioId(usuarioId);
+            return ResponseEntity.ok(pedidos);
+        }
+        try {
+            return ResponseEntity.ok(pedidoService.findPaginaByUsuarioId(usuarioId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return crearRespuestaError(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
     }
 
     // Obtener pedido por ID
     @GetMapping("/{id}")
-    public ResponseEntity<Pedido> getPedidoById(@PathVariable Long id) {
+    public ResponseEntity<PedidoDTO> getPedidoById(@PathVariable Long id) {
         return pedidoService.findById(id)
-                .map(pedido -> ResponseEntity.ok(pedidoService.enrichPedidoWithInstrumentos(pedido)))
+                .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -47,6 +156,8 @@ public class PedidoController {
     @PostMapping
     public ResponseEntity<?> createPedido(
             @RequestBody Pedido pedido,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestParam(defaultValue = "false") boolean async,
             HttpServletRequest request) {
         try {
             log.info("Recibiendo pedido: {}", pedido);
@@ -88,6 +199,29 @@ public class PedidoController {
                 return crearRespuestaError("El pedido no tiene detalles", HttpStatus.BAD_REQUEST);
             }
 
+            // async=true: el pedido se valida y se encola; 202 con la solicitud para seguir su confirmación
+            HttpStatus estado = async ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+            Supplier<?> accion = async ? () -> recepcionPedidosService.encolar(pedido) : () -> pedidoService.save(pedido);
+
+            // Con Idempotency-Key un reintento devuelve la respuesta original sin crear otro pedido
+            if (idempotencyKey != null) {
+                IdempotenciaService.Respuesta respuesta = idempotenciaService.ejecutar(userId, idempotencyKey, pedido,
+                        estado.value(), accion);
+                log.info("Pedido con Idempotency-Key {} ({})", idempotencyKey, respuesta.isRepetida() ? "repetido" : "nuevo");
+                return ResponseEntity.status(respuesta.getEstado())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("Idempotent-Replayed", String.valueOf(respuesta.isRepetida()))
+                        .body(respuesta.getCuerpo());
+            }
+
+            if (async) {
+                SolicitudPedidoDTO solicitud = recepcionPedidosService.encolar(pedido);
+                log.info("Pedido encolado: solicitud {}", solicitud.getId());
+                return ResponseEntity.accepted()
+                        .location(URI.create("/pedidos/solicitudes/" + solicitud.getId()))
+                        .body(solicitud);
+            }
+
             // Guardar el pedido
             Pedido savedPedido = pedidoService.save(pedido);
 
@@ -97,12 +231,52 @@ public class PedidoController {
         } catch (IllegalArgumentException e) {
             log.error("Error de validación al guardar pedido: {}", e.getMessage());
             return crearRespuestaError(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (RecepcionPedidosService.ColaLlenaException e) {
+            log.warn("Pedido rechazado: cola de pedidos llena");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return crearRespuestaError(e.getMessage(), HttpStatus.CONFLICT);
         } catch (Exception e) {
             log.error("Error al guardar pedido: {}", e.getMessage(), e);
             return crearRespuestaError("Error interno al procesar el pedido", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    // Estado de un pedido recibido con async=true. Con esperaMs la respuesta se demora hasta que el pedido
+    // se confirma o se rechaza (long polling, sin ocupar un hilo del servidor)
+    @GetMapping("/solicitudes/{id}")
+    public CompletableFuture<ResponseEntity<SolicitudPedidoDTO>> getSolicitud(
+            @PathVariable String id,
+            @RequestParam(required = false) Long esperaMs) {
+        long espera = esperaMs == null ? 0 : Math.max(0, Math.min(esperaMs, ESPERA_MAXIMA_MS));
+        return recepcionPedidosService.esperarSolicitud(id, espera)
+                .map(futuro -> futuro.thenApply(this::respuestaSolicitud))
+                .orElseGet(() -> CompletableFuture.completedFuture(ResponseEntity.notFound().build()));
+    }
+
+    @GetMapping("/recepcion/metricas")
+    public ResponseEntity<RecepcionPedidosMetricasDTO> getMetricasRecepcion() {
+        return ResponseEntity.ok(recepcionPedidosService.getMetricas());
+    }
+
+    // Vencer ya los pedidos pendientes abandonados (además del job programado)
+    @PostMapping("/vencer")
+    public ResponseEntity<?> vencerPedidos() {
+        return ResponseEntity.ok(Map.of("cancelados", vencimientoPedidosService.vencer()));
+    }
+
+    // Mismo estado para varios pedidos: resultado por pedido, los rechazados no impiden el cambio de los demás
+    @PatchMapping("/estado")
+    public ResponseEntity<?> updateEstadoPedidos(@RequestBody CambioEstadosDTO solicitud) {
+        try {
+            return ResponseEntity.ok(pedidoService.actualizarEstados(solicitud.getIds(), solicitud.getEstado()));
+        } catch (IllegalArgumentException e) {
+            return crearRespuestaError(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     // Actualizar estado del pedido
     @PatchMapping("/{id}/estado")
     public ResponseEntity<?> updateEstadoPedido(@PathVariable Long id, @RequestBody Map<String, String> body) {
@@ -112,10 +286,16 @@ public class PedidoController {
                 return crearRespuestaError("El estado no puede estar vacío", HttpStatus.BAD_REQUEST);
             }
 
-            Pedido pedidoActualizado = pedidoService.actualizarEstadoPedido(id, nuevoEstado);
-            return ResponseEntity.ok(pedidoActualizado);
+            if (!EstadosPedido.esValido(nuevoEstado)) {
+                return crearRespuestaError("Estado inválido: " + nuevoEstado, HttpStatus.BAD_REQUEST);
+            }
+
+            pedidoService.actualizarEstadoPedido(id, nuevoEstado);
+            return ResponseEntity.ok(pedidoService.findById(id).orElseThrow());
         } catch (IllegalArgumentException e) {
             return crearRespuestaError(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return crearRespuestaError(e.getMessage(), HttpStatus.CONFLICT);
         } catch (Exception e) {
             return crearRespuestaError("Error al actualizar el estado del pedido", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -134,6 +314,16 @@ public class PedidoController {
         }
     }
 
+    // Confirmada: Location apunta al pedido creado
+    private ResponseEntity<SolicitudPedidoDTO> respuestaSolicitud(SolicitudPedidoDTO solicitud) {
+        if (solicitud.getIdPedido() == null) {
+            return ResponseEntity.ok(solicitud);
+        }
+        return ResponseEntity.ok()
+                .location(URI.create("/pedidos/" + solicitud.getIdPedido()))
+                .body(solicitud);
+    }
+
     // Método auxiliar para crear respuestas de error
     private ResponseEntity<Map<String, String>> crearRespuestaError(String mensaje, HttpStatus status) {
         Map<String, String> response = new HashMap<>();
@@ -0,0 +1,56 @@
+package com.example.instrumentos.controller;
+
+import com.example.instrumentos.service.PrecioTimelineService;
+import com.example.instrumentos.service.ReporteVentasService;
+import com.example.instrumentos.service.VentasDiariasService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/reportes")
+@RequiredArgsConstructor
+public class ReporteController {
+
+    private final ReporteVentasService reporteVentasService;
+    private final VentasDiariasService ventasDiariasService;
+
+    // Ingresos, unidades y pedidos del rango por período (agrupar=dia|semana|mes), categoría e instrumento
+    @GetMapping("/ventas")
+    public ResponseEntity<?> getVentas(
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String agrupar) {
+        try {
+            Date desde = from != null ? PrecioTimelineService.parsearFecha(from, false) : null;
+            Date hasta = to != null ? PrecioTimelineService.parsearFecha(to, true) : null;
+            return ResponseEntity.ok(reporteVentasService.ventas(desde, hasta, agrupar));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Recalcula ventas_diarias para los días indicados (yyyy-MM-dd, inclusive) desde los pedidos
+    @PostMapping("/ventas/reconstruir")
+    public ResponseEntity<?> reconstruirVentas(@RequestParam String from, @RequestParam String to) {
+        try {
+            LocalDate desde = LocalDate.parse(from);
+            LocalDate hasta = LocalDate.parse(to);
+            int filas = ventasDiariasService.reconstruir(desde, hasta);
+            return ResponseEntity.ok(Map.of("desde", desde.toString(), "hasta", hasta.toString(), "filas", filas));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Fecha inválida, usar yyyy-MM-dd"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -10,9 +10,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,6 +22,7 @@ import java.util.Map;
 public class UsuarioController {
 
     private final UsuarioService usuarioService;
+    private final JsonStreaming jsonStreaming;
 
     // Login
     @PostMapping("/login")
@@ -75,10 +76,28 @@ public class UsuarioController {
         }
     }
 
-    // Obtener todos los usuarios (solo admin)
+    // Obtener usuarios paginados por cursor; todos=true devuelve la lista completa (solo admin)
     @GetMapping
-    public ResponseEntity<List<Usuario>> getAllUsuarios() {
-        return ResponseEntity.ok(usuarioService.findAll());
+    public ResponseEntity<?> getAllUsuarios(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "false") boolean todos) {
+        if (todos) {
+            return ResponseEntity.ok(usuarioService.findAll());
+        }
+        try {
+            return ResponseEntity.ok(usuarioService.findPagina(cursor, size));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    // Todos los usuarios leídos con cursor de la base y escritos en streaming (?stream=true, solo admin)
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamUsuarios() {
+        return jsonStreaming.<Usuario>respuesta(usuarioService::forEachUsuario);
     }
 
     // Obtener usuario por ID (solo admin)
@@ -0,0 +1,21 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Cambio masivo de precios: una lista explícita o una regla (no ambas)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActualizacionPreciosDTO {
+    private List<PrecioNuevoDTO> precios;
+
+    // Regla: porcentaje sobre el precio vigente, filtrando opcionalmente por categoría y marca
+    private Long idCategoria;
+    private String marca;
+    private Double porcentaje;  // 8 = +8%, -10 = -10%
+    private Double redondeo;    // múltiplo al que se redondea el resultado (0.01 si no se indica)
+}
@@ -0,0 +1,16 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Cambio de estado de varios pedidos al mismo estado (PATCH /pedidos/estado)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CambioEstadosDTO {
+    private List<Long> ids;
+    private String estado;
+}
@@ -0,0 +1,19 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogoCacheMetricasDTO {
+    private long aciertos;
+    private long fallos;
+    private long reconstrucciones;
+    private long ultimaReconstruccionMs;
+    private long actualizacionesParciales;
+    private long ultimaActualizacionParcialMs;
+    private int instrumentos;
+    private int categorias;
+}
@@ -0,0 +1,34 @@
+package com.example.instrumentos.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetallePedidoDTO {
+    // Sólo para agrupar por pedido y buscar el instrumento en el catálogo
+    @JsonIgnore
+    private Long idPedido;
+    @JsonIgnore
+    private Long idInstrumento;
+
+    private Long idDetallePedido;
+    private InstrumentoRequestDTO instrumento;
+    private Integer cantidad;
+    private Double precioUnitario;
+    private Double subtotal;
+
+    // Proyección de DetallePedidoRepository; el instrumento se completa después
+    public DetallePedidoDTO(Long idPedido, Long idDetallePedido, Long idInstrumento,
+                            Integer cantidad, Double precioUnitario, Double subtotal) {
+        this.idPedido = idPedido;
+        this.idDetallePedido = idDetallePedido;
+        this.idInstrumento = idInstrumento;
+        this.cantidad = cantidad;
+        this.precioUnitario = precioUnitario;
+        this.subtotal = subtotal;
+    }
+}
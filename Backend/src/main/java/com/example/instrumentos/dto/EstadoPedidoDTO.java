@@ -0,0 +1,19 @@
+package com.example.instrumentos.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EstadoPedidoDTO {
+    @JsonIgnore
+    private Long idPedido;
+    private Long idEstadoPedido;
+    private String estado;
+    private Date fecha;
+}
@@ -0,0 +1,14 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetaValorDTO {
+    private String valor;       // valor a enviar como filtro
+    private String etiqueta;    // texto para mostrar
+    private int cantidad;       // instrumentos que quedarían al elegir este valor
+}
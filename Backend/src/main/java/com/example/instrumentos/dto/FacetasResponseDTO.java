@@ -0,0 +1,19 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetasResponseDTO {
+    private List<InstrumentoRequestDTO> items;
+    private String next;        // cursor de la página siguiente (null si no hay más)
+    private int size;
+    private int total;          // instrumentos que cumplen todos los filtros
+    private Map<String, List<FacetaValorDTO>> facetas;  // categoria, marca, precio, stock
+}
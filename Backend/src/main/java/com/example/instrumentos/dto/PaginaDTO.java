@@ -0,0 +1,16 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaDTO<T> {
+    private List<T> items;
+    private String next;    // cursor opaco para pedir la página siguiente (null si no hay más)
+    private int size;       // tamaño de página aplicado
+}
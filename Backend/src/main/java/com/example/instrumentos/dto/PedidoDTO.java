@@ -0,0 +1,34 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Vista de lectura de un pedido: se arma con consultas por lote (pedidos, detalles, estados) y el catálogo
+// en memoria, sin recorrer relaciones perezosas al serializar
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PedidoDTO {
+    private Long idPedido;
+    private UsuarioPedidoDTO usuario;
+    private Date fecha;
+    private Double totalPedido;
+    private String estadoActual;
+    private List<DetallePedidoDTO> detalles = new ArrayList<>();
+    private List<EstadoPedidoDTO> estados = new ArrayList<>();
+
+    // Proyección de PedidoRepository: pedido y usuario en una fila
+    public PedidoDTO(Long idPedido, Date fecha, Double totalPedido, String estadoActual,
+                     Long idUsuario, String nombre, String apellido, String email, String rol) {
+        this.idPedido = idPedido;
+        this.usuario = new UsuarioPedidoDTO(idUsuario, nombre, apellido, email, rol);
+        this.fecha = fecha;
+        this.totalPedido = totalPedido;
+        this.estadoActual = estadoActual;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrecioHistoricoDTO {
+    private Long id;                // id del registro en el historial
+    private Long idInstrumento;
+    private Date fecha;
+    private Double precio;
+}
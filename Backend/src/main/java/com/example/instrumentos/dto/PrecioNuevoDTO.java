@@ -0,0 +1,13 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrecioNuevoDTO {
+    private Long idInstrumento;
+    private Double precio;
+}
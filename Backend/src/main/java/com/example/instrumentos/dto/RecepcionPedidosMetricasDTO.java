@@ -0,0 +1,22 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecepcionPedidosMetricasDTO {
+    private int enCola;
+    private int capacidad;
+    private long recibidos;
+    private long confirmados;
+    private long rechazados;
+    private long lotes;
+    private int ultimoLote;
+    private double promedioLote;
+    private long ultimoCommitMs;
+    private double promedioCommitMs;
+    private long maximoCommitMs;
+}
@@ -0,0 +1,23 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReporteVentasDTO {
+    private Date desde;
+    private Date hasta;
+    private String agrupacion;
+    private VentaDTO totales;
+    private List<VentaDTO> porPeriodo;
+    private List<VentaDTO> porCategoria;
+    private List<VentaDTO> porInstrumento;
+    private int tramos;
+    private long duracionMs;
+}
@@ -0,0 +1,15 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoCambioEstadoDTO {
+    private Long idPedido;
+    private boolean actualizado;
+    private String estadoAnterior;  // null si el pedido no existe
+    private String error;           // motivo si no se actualizó
+}
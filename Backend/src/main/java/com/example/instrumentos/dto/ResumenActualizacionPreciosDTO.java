@@ -0,0 +1,20 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenActualizacionPreciosDTO {
+    private int alcanzados;             // instrumentos que cumplen la lista o la regla
+    private int actualizados;
+    private int sinCambios;             // el precio nuevo es igual al vigente
+    private List<Long> noEncontrados;   // ids de la lista que no existen
+    private Date fecha;                 // fecha de los registros de historial creados
+    private long duracionMs;
+}
@@ -0,0 +1,20 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenCambioEstadosDTO {
+    private String estado;
+    private int actualizados;
+    private int rechazados;
+    private List<ResultadoCambioEstadoDTO> resultados;  // uno por id, en el orden de la solicitud
+    private Date fecha;                                 // fecha de los registros de historial creados
+    private long duracionMs;
+}
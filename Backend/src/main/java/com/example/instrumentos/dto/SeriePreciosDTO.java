@@ -0,0 +1,19 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeriePreciosDTO {
+    private Long idInstrumento;
+    private Date desde;
+    private Date hasta;
+    private long registros;             // puntos leídos antes de reducir (con el precio vigente al inicio)
+    private List<PuntoPrecioDTO> puntos; // a lo sumo "points", ordenados por fecha
+}
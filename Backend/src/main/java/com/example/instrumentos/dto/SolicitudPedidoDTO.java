@@ -0,0 +1,20 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Seguimiento de un pedido recibido en forma asincrónica: EN_COLA, CONFIRMADO (con idPedido) o RECHAZADO (con error)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SolicitudPedidoDTO {
+    private String id;
+    private String estado;
+    private Long idPedido;
+    private String error;
+    private Date recibido;
+    private Date procesado;
+}
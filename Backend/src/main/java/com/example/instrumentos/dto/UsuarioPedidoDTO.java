@@ -0,0 +1,16 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsuarioPedidoDTO {
+    private Long idUsuario;
+    private String nombre;
+    private String apellido;
+    private String email;
+    private String rol;
+}
@@ -0,0 +1,18 @@
+package com.example.instrumentos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Una fila del reporte de ventas: período (clave), categoría o instrumento (id y nombre)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaDTO {
+    private String clave;
+    private Long id;
+    private String nombre;
+    private double ingresos;
+    private long unidades;
+    private long pedidos;
+}
@@ -0,0 +1,23 @@
+package com.example.instrumentos.event;
+
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Set;
+
+// Publicado por CatalogoCache cada vez que publica un snapshot nuevo (ya confirmado en la base).
+// completo = true indica una reconstrucción total: los consumidores deben releer el catálogo entero.
+@Getter
+@AllArgsConstructor
+public class CatalogoActualizadoEvent {
+    private final List<InstrumentoRequestDTO> actualizados;
+    private final Set<Long> eliminados;
+    private final boolean categoriasModificadas;
+    private final boolean completo;
+
+    public static CatalogoActualizadoEvent completo() {
+        return new CatalogoActualizadoEvent(List.of(), Set.of(), true, true);
+    }
+}
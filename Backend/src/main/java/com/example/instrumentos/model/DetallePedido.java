@@ -27,4 +27,11 @@ public class DetallePedido {
     private Instrumento instrumento;
 
     private Integer cantidad;
+
+    // Precio del instrumento al momento de la compra y cantidad * precio
+    @Column(name = "precio_unitario")
+    private Double precioUnitario;
+
+    @Column(name = "subtotal")
+    private Double subtotal;
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.example.instrumentos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Precios reemplazados más viejos que el horizonte de archivo (ver ArchivoPreciosService).
+// Conserva el id original y guarda el instrumento como columna simple, sin relación ni FK.
+@Entity
+@Table(name = "historial_precio_archivado", indexes = {
+        @Index(name = "idx_archivado_instrumento_fecha", columnList = "id_instrumento, fecha, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistorialPrecioArchivado {
+    @Id
+    private Long id;
+
+    @Column(name = "id_instrumento", nullable = false)
+    private Long idInstrumento;
+
+    @Column(nullable = false)
+    private Double precio;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date fecha;
+}
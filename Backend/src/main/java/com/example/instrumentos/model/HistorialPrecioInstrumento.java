@@ -8,7 +8,11 @@ import lombok.NoArgsConstructor;
 import java.util.Date;
 
 @Entity
-@Table(name = "historial_precio_instrumento")
+// Índice en el orden de "último precio primero" e incluyendo el precio: la consulta del precio vigente
+// lee una sola entrada del índice (sin filesort ni acceso a la tabla); el recorrido por fecha lo lee al revés
+@Table(name = "historial_precio_instrumento", indexes = {
+        @Index(name = "idx_historial_instrumento_fecha", columnList = "id_instrumento, fecha DESC, id DESC, precio")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
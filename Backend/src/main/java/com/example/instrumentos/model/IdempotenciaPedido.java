@@ -0,0 +1,48 @@
+package com.example.instrumentos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Respuesta de un POST /pedidos con Idempotency-Key, para repetirla ante reintentos del cliente.
+// La clave es única por usuario: un segundo pedido con la misma clave no puede confirmarse
+@Entity
+@Table(name = "idempotencia_pedido",
+        uniqueConstraints = @UniqueConstraint(name = "uk_idempotencia_usuario_clave", columnNames = {"id_usuario", "clave"}),
+        indexes = @Index(name = "idx_idempotencia_expira", columnList = "expira"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotenciaPedido {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "id_usuario", nullable = false)
+    private Long idUsuario;
+
+    @Column(nullable = false, length = 100)
+    private String clave;
+
+    // SHA-256 del pedido recibido: la misma clave con otro contenido se rechaza
+    @Column(nullable = false, length = 64)
+    private String huella;
+
+    @Column(nullable = false)
+    private Integer estado;
+
+    @Lob
+    @Column(nullable = false)
+    private String cuerpo;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date fecha;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date expira;
+}
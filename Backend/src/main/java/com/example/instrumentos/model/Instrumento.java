@@ -7,6 +7,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Date;
 import java.util.List;
 
 @Entity
@@ -38,6 +39,14 @@ public class Instrumento {
     @Column(name = "imagen")
     private String imagen;
 
+    // Precio vigente desnormalizado: se actualiza en la misma transacción que el historial de precios
+    @Column(name = "precio_actual")
+    private Double precioActual;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "fecha_precio_actual")
+    private Date fechaPrecioActual;
+
     // Relación con CategoriaInstrumento
     @ManyToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "id_categoria_instrumento", nullable = false)
@@ -53,16 +62,4 @@ public class Instrumento {
     @OneToMany(mappedBy = "instrumento", cascade = CascadeType.ALL)
     @JsonIgnore
     private List<HistorialPrecioInstrumento> historialPrecios;
-
-    // Método para obtener el precio actual
-    @Transient
-    public Double getPrecioActual() {
-        if (historialPrecios != null && !historialPrecios.isEmpty()) {
-            return historialPrecios.stream()
-                    .max((h1, h2) -> h1.getFecha().compareTo(h2.getFecha()))
-                    .map(HistorialPrecioInstrumento::getPrecio)
-                    .orElse(0.0);
-        }
-        return 0.0;
-    }
 }
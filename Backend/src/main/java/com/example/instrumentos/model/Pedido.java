@@ -10,7 +10,11 @@ import java.util.Date;
 import java.util.List;
 
 @Entity
-@Table(name = "pedidos")
+@Table(name = "pedidos", indexes = {
+        @Index(name = "idx_pedidos_fecha_id", columnList = "fecha, id_pedido"),
+        @Index(name = "idx_pedidos_usuario_fecha_id", columnList = "id_usuario, fecha, id_pedido"),
+        @Index(name = "idx_pedidos_estado_fecha_id", columnList = "estado_actual, fecha, id_pedido")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -29,6 +33,15 @@ public class Pedido {
     @Column(nullable = false)
     private Date fecha;
 
+    // Suma de los subtotales, fijada al confirmar el pedido (no cambia con los precios posteriores)
+    @Column(name = "total_pedido")
+    private Double totalPedido;
+
+    // Último estado del historial, desnormalizado para filtrar por estado sin leer estados_pedido.
+    // Se actualiza junto con cada registro de EstadoPedido (PedidoService.actualizarEstadoPedido)
+    @Column(name = "estado_actual", length = 20)
+    private String estadoActual;
+
     // Relación con DetallePedido
     @OneToMany(mappedBy = "pedido", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<DetallePedido> detalles;
@@ -37,24 +50,4 @@ public class Pedido {
     @OneToMany(mappedBy = "pedido", cascade = CascadeType.ALL)
     @OrderBy("fecha DESC")
     private List<EstadoPedido> estados;
-
-    // Método para obtener el estado actual
-    @Transient
-    public String getEstadoActual() {
-        if (estados != null && !estados.isEmpty()) {
-            return estados.get(0).getEstado();
-        }
-        return "PENDIENTE";
-    }
-
-    // Método para calcular el total del pedido
-    @Transient
-    public Double getTotalPedido() {
-        if (detalles == null || detalles.isEmpty()) {
-            return 0.0;
-        }
-        return detalles.stream()
-                .mapToDouble(d -> d.getCantidad() * d.getInstrumento().getPrecioActual())
-                .sum();
-    }
 }
\ No newline at end of file
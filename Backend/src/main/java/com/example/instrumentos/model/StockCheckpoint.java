@@ -0,0 +1,23 @@
+package com.example.instrumentos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Última secuencia del diario de stock ya volcada a instrumentos.stock (una sola fila, id 1).
+// Se actualiza en la misma transacción que el volcado: al recuperar se aplican sólo las posteriores
+@Entity
+@Table(name = "stock_checkpoint")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockCheckpoint {
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private Long secuencia;
+}
@@ -0,0 +1,50 @@
+package com.example.instrumentos.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Ventas acumuladas por día e instrumento (pedidos no cancelados). La mantiene VentasDiariasService
+// en la misma transacción que cada pedido, su cancelación o su baja; los reportes leen de acá.
+// Los pedidos de un día o de una categoría no se pueden sumar instrumento por instrumento (un pedido
+// tiene varios): cada pedido se cuenta además una sola vez en su primer instrumento (menor id),
+// en total y dentro de cada categoría, y esas columnas sí se suman.
+@Entity
+@Table(name = "ventas_diarias",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ventas_diarias_dia_instrumento", columnNames = {"dia", "id_instrumento"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaDiaria {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Temporal(TemporalType.DATE)
+    @Column(nullable = false)
+    private Date dia;
+
+    @Column(name = "id_instrumento", nullable = false)
+    private Long idInstrumento;
+
+    @Column(nullable = false)
+    private Double ingresos;
+
+    @Column(nullable = false)
+    private Long unidades;
+
+    // Pedidos que incluyen el instrumento
+    @Column(nullable = false)
+    private Long pedidos;
+
+    // Pedidos cuyo primer instrumento es éste (suma por día = pedidos del día)
+    @Column(name = "primeros_del_pedido", nullable = false)
+    private Long primerosDelPedido;
+
+    // Pedidos cuyo primer instrumento de la categoría es éste (suma por categoría = pedidos de la categoría)
+    @Column(name = "primeros_de_categoria", nullable = false)
+    private Long primerosDeCategoria;
+}
@@ -1,12 +1,34 @@
 package com.example.instrumentos.repository;
 
+import com.example.instrumentos.dto.DetallePedidoDTO;
 import com.example.instrumentos.model.DetallePedido;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface DetallePedidoRepository extends JpaRepository<DetallePedido, Long> {
     List<DetallePedido> findByPedido_IdPedido(Long idPedido);
-}
\ No newline at end of file
+
+    // Detalles creados antes de guardar el precio en el pedido, por id ascendente (backfill por lotes)
+    @Query("SELECT d FROM DetallePedido d JOIN FETCH d.pedido JOIN FETCH d.instrumento " +
+            "WHERE d.subtotal IS NULL AND d.idDetallePedido > :despuesDe ORDER BY d.idDetallePedido")
+    List<DetallePedido> findSinSubtotal(@Param("despuesDe") Long despuesDe, Limit limit);
+
+    long countBySubtotalIsNull();
+
+    @Query("SELECT new com.example.instrumentos.dto.DetallePedidoDTO(" +
+            "d.pedido.idPedido, d.idDetallePedido, d.instrumento.idInstrumento, d.cantidad, d.precioUnitario, d.subtotal) " +
+            "FROM DetallePedido d WHERE d.pedido.idPedido IN :idsPedido ORDER BY d.idDetallePedido")
+    List<DetallePedidoDTO> findResumenesByPedidos(@Param("idsPedido") Collection<Long> idsPedido);
+
+    // Unidades por instrumento de varios pedidos: [idInstrumento, suma de cantidades]
+    @Query("SELECT d.instrumento.idInstrumento, SUM(d.cantidad) FROM DetallePedido d " +
+            "WHERE d.pedido.idPedido IN :idsPedido GROUP BY d.instrumento.idInstrumento")
+    List<Object[]> sumarCantidadesPorInstrumento(@Param("idsPedido") Collection<Long> idsPedido);
+}
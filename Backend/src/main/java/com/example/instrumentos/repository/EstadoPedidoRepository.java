@@ -1,12 +1,21 @@
 package com.example.instrumentos.repository;
 
+import com.example.instrumentos.dto.EstadoPedidoDTO;
 import com.example.instrumentos.model.EstadoPedido;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface EstadoPedidoRepository extends JpaRepository<EstadoPedido, Long> {
     List<EstadoPedido> findByPedido_IdPedidoOrderByFechaDesc(Long idPedido);
-}
\ No newline at end of file
+
+    // Más recientes primero: el primero de cada pedido es su estado actual
+    @Query("SELECT new com.example.instrumentos.dto.EstadoPedidoDTO(e.pedido.idPedido, e.idEstadoPedido, e.estado, e.fecha) " +
+            "FROM EstadoPedido e WHERE e.pedido.idPedido IN :idsPedido ORDER BY e.fecha DESC, e.idEstadoPedido DESC")
+    List<EstadoPedidoDTO> findResumenesByPedidos(@Param("idsPedido") Collection<Long> idsPedido);
+}
@@ -0,0 +1,51 @@
+package com.example.instrumentos.repository;
+
+import com.example.instrumentos.dto.PrecioHistoricoDTO;
+import com.example.instrumentos.dto.PuntoPrecioDTO;
+import com.example.instrumentos.model.HistorialPrecioArchivado;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@Repository
+public interface HistorialPrecioArchivadoRepository extends JpaRepository<HistorialPrecioArchivado, Long> {
+
+    // Copia al archivo los registros indicados del historial (mismo id)
+    @Modifying
+    @Query("INSERT INTO HistorialPrecioArchivado (id, idInstrumento, precio, fecha) " +
+            "SELECT h.id, h.instrumento.idInstrumento, h.precio, h.fecha FROM HistorialPrecioInstrumento h WHERE h.id IN :ids")
+    int archivar(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM HistorialPrecioArchivado a WHERE a.idInstrumento = :idInstrumento")
+    int deleteByIdInstrumento(@Param("idInstrumento") Long idInstrumento);
+
+    // Mismo orden que HistorialPrecioRepository.streamLineasDeTiempo, para combinarlos
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.instrumentos.dto.PrecioHistoricoDTO(a.id, a.idInstrumento, a.fecha, a.precio) " +
+            "FROM HistorialPrecioArchivado a ORDER BY a.idInstrumento, a.fecha, a.id")
+    Stream<PrecioHistoricoDTO> streamLineasDeTiempo();
+
+    // Mismo contrato que HistorialPrecioRepository.streamSerie
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.example.instrumentos.dto.PuntoPrecioDTO(a.fecha, a.precio) FROM HistorialPrecioArchivado a " +
+            "WHERE a.idInstrumento = :idInstrumento AND a.fecha >= :desde AND a.fecha <= :hasta ORDER BY a.fecha, a.id")
+    Stream<PuntoPrecioDTO> streamSerie(@Param("idInstrumento") Long idInstrumento,
+                                       @Param("desde") Date desde, @Param("hasta") Date hasta);
+
+    @Query("SELECT MIN(a.fecha) FROM HistorialPrecioArchivado a WHERE a.idInstrumento = :idInstrumento")
+    Optional<Date> findPrimeraFecha(@Param("idInstrumento") Long idInstrumento);
+}
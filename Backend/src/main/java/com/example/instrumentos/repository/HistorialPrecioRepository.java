@@ -1,26 +1,69 @@
 package com.example.instrumentos.repository;
 
+import com.example.instrumentos.dto.PrecioHistoricoDTO;
+import com.example.instrumentos.dto.PuntoPrecioDTO;
 import com.example.instrumentos.model.HistorialPrecioInstrumento;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.example.instrumentos.model.HistorialPrecioInstrumento;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface HistorialPrecioRepository extends JpaRepository<HistorialPrecioInstrumento, Long> {
     List<HistorialPrecioInstrumento> findByInstrumento_IdInstrumentoOrderByFechaDesc(Long idInstrumento);
 
-    @Query("SELECT h FROM HistorialPrecioInstrumento h WHERE h.instrumento.idInstrumento = :idInstrumento ORDER BY h.fecha DESC LIMIT 1")
+    // Se resuelve con idx_historial_instrumento_fecha: una entrada del índice, sin ordenar
+    @Query("SELECT h FROM HistorialPrecioInstrumento h WHERE h.instrumento.idInstrumento = :idInstrumento " +
+            "ORDER BY h.fecha DESC, h.id DESC LIMIT 1")
     Optional<HistorialPrecioInstrumento> findLatestByInstrumentoId(@Param("idInstrumento") Long idInstrumento);
 
 
     HistorialPrecioInstrumento findTopByInstrumento_IdInstrumentoOrderByFechaDesc(Long idInstrumento);
 
+    // Historial completo ordenado por instrumento y fecha, para armar las líneas de tiempo de precios
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.instrumentos.dto.PrecioHistoricoDTO(h.id, h.instrumento.idInstrumento, h.fecha, h.precio) " +
+            "FROM HistorialPrecioInstrumento h ORDER BY h.instrumento.idInstrumento, h.fecha, h.id")
+    Stream<PrecioHistoricoDTO> streamLineasDeTiempo();
+
+    // Sólo (fecha, precio) de un instrumento en el rango, por idx_historial_instrumento_fecha (series para gráficos)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.example.instrumentos.dto.PuntoPrecioDTO(h.fecha, h.precio) FROM HistorialPrecioInstrumento h " +
+            "WHERE h.instrumento.idInstrumento = :idInstrumento AND h.fecha >= :desde AND h.fecha <= :hasta " +
+            "ORDER BY h.fecha, h.id")
+    Stream<PuntoPrecioDTO> streamSerie(@Param("idInstrumento") Long idInstrumento,
+                                       @Param("desde") Date desde, @Param("hasta") Date hasta);
+
+    @Query("SELECT MIN(h.fecha) FROM HistorialPrecioInstrumento h WHERE h.instrumento.idInstrumento = :idInstrumento")
+    Optional<Date> findPrimeraFecha(@Param("idInstrumento") Long idInstrumento);
+
+    // Registros reemplazados (hay uno posterior del mismo instrumento) anteriores al corte, por id ascendente.
+    // El último precio de cada instrumento nunca califica
+    @Query("SELECT h.id FROM HistorialPrecioInstrumento h WHERE h.id > :despuesDe AND h.fecha < :corte AND EXISTS (" +
+            "SELECT 1 FROM HistorialPrecioInstrumento n WHERE n.instrumento = h.instrumento " +
+            "AND (n.fecha > h.fecha OR (n.fecha = h.fecha AND n.id > h.id))) ORDER BY h.id")
+    List<Long> findIdsReemplazadosAntesDe(@Param("corte") Date corte, @Param("despuesDe") Long despuesDe, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM HistorialPrecioInstrumento h WHERE h.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
 
 }
 
@@ -0,0 +1,26 @@
+package com.example.instrumentos.repository;
+
+import com.example.instrumentos.model.IdempotenciaPedido;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.Optional;
+
+@Repository
+public interface IdempotenciaPedidoRepository extends JpaRepository<IdempotenciaPedido, Long> {
+
+    Optional<IdempotenciaPedido> findByIdUsuarioAndClave(Long idUsuario, String clave);
+
+    @Modifying
+    @Query("DELETE FROM IdempotenciaPedido i WHERE i.expira < :fecha")
+    int deleteVencidas(@Param("fecha") Date fecha);
+
+    // La clave vencida que todavía no borró la limpieza no debe impedir volver a usarla
+    @Modifying
+    @Query("DELETE FROM IdempotenciaPedido i WHERE i.idUsuario = :idUsuario AND i.clave = :clave AND i.expira < :fecha")
+    int deleteVencida(@Param("idUsuario") Long idUsuario, @Param("clave") String clave, @Param("fecha") Date fecha);
+}
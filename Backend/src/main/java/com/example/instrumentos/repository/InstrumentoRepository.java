@@ -1,20 +1,69 @@
 package com.example.instrumentos.repository;
 
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
 import com.example.instrumentos.model.Instrumento;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface InstrumentoRepository extends JpaRepository<Instrumento, Long> {
+
+    // Proyección del catálogo: instrumento + categoría + precio vigente en una sola consulta
+    String SELECT_CATALOGO = "SELECT new com.example.instrumentos.dto.InstrumentoRequestDTO(" +
+            "i.idInstrumento, i.codigo, i.denominacion, i.marca, i.stock, i.descripcion, i.imagen, " +
+            "c.idCategoriaInstrumento, c.denominacion, i.precioActual) " +
+            "FROM Instrumento i JOIN i.categoriaInstrumento c ";
+
     List<Instrumento> findByCategoriaInstrumento_IdCategoriaInstrumento(Long idCategoria);
     Optional<Instrumento> findByCodigo(String codigo);
     boolean existsByCodigo(String codigo);
 
+    long countByIdInstrumentoIn(Collection<Long> ids);
+
     @Query("SELECT i FROM Instrumento i LEFT JOIN FETCH i.historialPrecios WHERE i.idInstrumento = :id")
     Optional<Instrumento> findByIdWithHistorialPrecios(@Param("id") Long id);
-}
\ No newline at end of file
+
+    @Query(SELECT_CATALOGO + "ORDER BY i.idInstrumento")
+    List<InstrumentoRequestDTO> findCatalogo();
+
+    @Query(SELECT_CATALOGO + "WHERE c.idCategoriaInstrumento = :idCategoria ORDER BY i.idInstrumento")
+    List<InstrumentoRequestDTO> findCatalogoByCategoria(@Param("idCategoria") Long idCategoria);
+
+    @Query(SELECT_CATALOGO + "WHERE i.idInstrumento = :id")
+    Optional<InstrumentoRequestDTO> findCatalogoById(@Param("id") Long id);
+
+    @Query(SELECT_CATALOGO + "WHERE i.idInstrumento IN :ids ORDER BY i.idInstrumento")
+    List<InstrumentoRequestDTO> findCatalogoByIds(@Param("ids") Collection<Long> ids);
+
+    @Query(SELECT_CATALOGO + "WHERE c.idCategoriaInstrumento IN :idsCategoria ORDER BY i.idInstrumento")
+    List<InstrumentoRequestDTO> findCatalogoByCategorias(@Param("idsCategoria") Collection<Long> idsCategoria);
+
+    // Reconstruye el precio vigente desnormalizado a partir del historial de precios
+    @Modifying
+    @Query("UPDATE Instrumento i SET " +
+            "i.precioActual = (SELECT h.precio FROM HistorialPrecioInstrumento h WHERE h.id = (" +
+            "SELECT MAX(h2.id) FROM HistorialPrecioInstrumento h2 WHERE h2.instrumento = i AND h2.fecha = (" +
+            "SELECT MAX(h3.fecha) FROM HistorialPrecioInstrumento h3 WHERE h3.instrumento = i))), " +
+            "i.fechaPrecioActual = (SELECT MAX(h4.fecha) FROM HistorialPrecioInstrumento h4 WHERE h4.instrumento = i)")
+    int recalcularPreciosActuales();
+
+    // Descuento atómico: no modifica nada (devuelve 0) si el stock no alcanza
+    @Modifying
+    @Query("UPDATE Instrumento i SET i.stock = i.stock - :cantidad WHERE i.idInstrumento = :id AND i.stock >= :cantidad")
+    int descontarStock(@Param("id") Long id, @Param("cantidad") int cantidad);
+
+    @Modifying
+    @Query("UPDATE Instrumento i SET i.stock = i.stock + :cantidad WHERE i.idInstrumento = :id")
+    int reponerStock(@Param("id") Long id, @Param("cantidad") int cantidad);
+
+    @Query("SELECT COUNT(i) FROM Instrumento i WHERE i.precioActual IS NULL AND EXISTS (" +
+            "SELECT h FROM HistorialPrecioInstrumento h WHERE h.instrumento = i)")
+    long countSinPrecioActual();
+}
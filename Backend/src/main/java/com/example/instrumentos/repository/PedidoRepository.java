@@ -1,21 +1,108 @@
 package com.example.instrumentos.repository;
 
+import com.example.instrumentos.dto.PedidoDTO;
 import com.example.instrumentos.model.Pedido;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Long> {
+    // Lecturas: pedido y usuario en una fila (PedidoDTO); detalles y estados se completan por lote
+    String SELECT_RESUMEN = "SELECT new com.example.instrumentos.dto.PedidoDTO(" +
+            "p.idPedido, p.fecha, p.totalPedido, p.estadoActual, u.idUsuario, u.nombre, u.apellido, u.email, r.definicion) " +
+            "FROM Pedido p JOIN p.usuario u JOIN u.rol r ";
+    String ORDEN_RECIENTES = " ORDER BY p.fecha DESC, p.idPedido DESC";
+
     List<Pedido> findByUsuario_IdUsuario(Long idUsuario);
 
-    @Query("SELECT p FROM Pedido p LEFT JOIN FETCH p.detalles d LEFT JOIN FETCH d.instrumento WHERE p.idPedido = :id")
-    Optional<Pedido> findByIdWithDetalles(@Param("id") Long id);
+    @Query(SELECT_RESUMEN + ORDEN_RECIENTES)
+    List<PedidoDTO> findResumenes();
+
+    @Query(SELECT_RESUMEN + "WHERE p.idPedido = :id")
+    Optional<PedidoDTO> findResumenById(@Param("id") Long id);
+
+    @Query(SELECT_RESUMEN + "WHERE u.idUsuario = :idUsuario" + ORDEN_RECIENTES)
+    List<PedidoDTO> findResumenesByUsuario(@Param("idUsuario") Long idUsuario);
+
+    // Paginación keyset: más recientes primero, desempate estable por id
+    @Query(SELECT_RESUMEN + ORDEN_RECIENTES)
+    List<PedidoDTO> findPrimeraPagina(Limit limit);
+
+    @Query(SELECT_RESUMEN + "WHERE p.fecha <= :fecha AND (p.fecha < :fecha OR p.idPedido < :idPedido)" +
+            ORDEN_RECIENTES)
+    List<PedidoDTO> findPaginaDespuesDe(@Param("fecha") Date fecha, @Param("idPedido") Long idPedido, Limit limit);
+
+    @Query(SELECT_RESUMEN + "WHERE u.idUsuario = :idUsuario" + ORDEN_RECIENTES)
+    List<PedidoDTO> findPrimeraPaginaByUsuario(@Param("idUsuario") Long idUsuario, Limit limit);
+
+    @Query(SELECT_RESUMEN + "WHERE u.idUsuario = :idUsuario " +
+            "AND p.fecha <= :fecha AND (p.fecha < :fecha OR p.idPedido < :idPedido)" + ORDEN_RECIENTES)
+    List<PedidoDTO> findPaginaByUsuarioDespuesDe(@Param("idUsuario") Long idUsuario, @Param("fecha") Date fecha,
+                                                 @Param("idPedido") Long idPedido, Limit limit);
+
+    // Filtro por estado actual (índice estado_actual, fecha, id_pedido)
+    @Query(SELECT_RESUMEN + "WHERE p.estadoActual = :estado" + ORDEN_RECIENTES)
+    List<PedidoDTO> findResumenesByEstado(@Param("estado") String estado);
+
+    @Query(SELECT_RESUMEN + "WHERE p.estadoActual = :estado" + ORDEN_RECIENTES)
+    List<PedidoDTO> findPrimeraPaginaByEstado(@Param("estado") String estado, Limit limit);
+
+    @Query(SELECT_RESUMEN + "WHERE p.estadoActual = :estado " +
+            "AND p.fecha <= :fecha AND (p.fecha < :fecha OR p.idPedido < :idPedido)" + ORDEN_RECIENTES)
+    List<PedidoDTO> findPaginaByEstadoDespuesDe(@Param("estado") String estado, @Param("fecha") Date fecha,
+                                                @Param("idPedido") Long idPedido, Limit limit);
+
+    // Para cambiar de estado: bloquea la fila hasta el fin de la transacción
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Pedido p WHERE p.idPedido = :id")
+    Optional<Pedido> findByIdParaActualizar(@Param("id") Long id);
+
+    // Pedidos en un estado desde antes del corte, más viejos primero (índice estado_actual, fecha, id_pedido),
+    // bloqueados hasta el fin de la transacción
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Pedido p WHERE p.estadoActual = :estado AND p.fecha < :corte ORDER BY p.fecha, p.idPedido")
+    List<Pedido> findAnterioresParaActualizar(@Param("estado") String estado, @Param("corte") Date corte, Limit limit);
+
+    @Modifying
+    @Query("UPDATE Pedido p SET p.estadoActual = :estado WHERE p.idPedido IN :ids")
+    int actualizarEstadoActual(@Param("ids") Collection<Long> ids, @Param("estado") String estado);
+
+    // Estado actual de los pedidos anteriores a la columna: el último registro del historial (o PENDIENTE)
+    @Modifying
+    @Query("UPDATE Pedido p SET p.estadoActual = COALESCE((SELECT e.estado FROM EstadoPedido e " +
+            "WHERE e.idEstadoPedido = (SELECT MAX(e2.idEstadoPedido) FROM EstadoPedido e2 WHERE e2.pedido = p)), " +
+            "'PENDIENTE') WHERE p.estadoActual IS NULL")
+    int completarEstadosActuales();
+
+    long countByEstadoActualIsNull();
+
+    // Recorrido completo con cursor de la base (requiere useCursorFetch=true en MySQL para respetar el fetch size)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_RESUMEN + ORDEN_RECIENTES)
+    Stream<PedidoDTO> streamAll();
+
+    // Total de los pedidos creados antes de guardarlo, a partir de los subtotales de sus detalles
+    @Modifying
+    @Query("UPDATE Pedido p SET p.totalPedido = (SELECT COALESCE(SUM(d.subtotal), 0) FROM DetallePedido d " +
+            "WHERE d.pedido = p) WHERE p.totalPedido IS NULL")
+    int completarTotales();
+
+    long countByTotalPedidoIsNull();
 
     @Query("SELECT p FROM Pedido p WHERE p.fecha BETWEEN :fechaInicio AND :fechaFin")
     List<Pedido> findByFechaBetween(@Param("fechaInicio") Date fechaInicio, @Param("fechaFin") Date fechaFin);
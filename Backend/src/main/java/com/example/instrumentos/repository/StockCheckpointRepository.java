@@ -0,0 +1,16 @@
+package com.example.instrumentos.repository;
+
+import com.example.instrumentos.model.StockCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StockCheckpointRepository extends JpaRepository<StockCheckpoint, Long> {
+
+    @Modifying
+    @Query("UPDATE StockCheckpoint c SET c.secuencia = :secuencia WHERE c.id = " + StockCheckpoint.ID)
+    int actualizar(@Param("secuencia") long secuencia);
+}
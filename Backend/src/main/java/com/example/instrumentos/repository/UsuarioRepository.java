@@ -1,13 +1,32 @@
 package com.example.instrumentos.repository;
 
 import com.example.instrumentos.model.Usuario;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     Optional<Usuario> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    // Paginación keyset por id
+    List<Usuario> findAllByOrderByIdUsuario(Limit limit);
+    List<Usuario> findByIdUsuarioGreaterThanOrderByIdUsuario(Long idUsuario, Limit limit);
+
+    // Recorrido completo con cursor de la base
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT u FROM Usuario u JOIN FETCH u.rol ORDER BY u.idUsuario")
+    Stream<Usuario> streamAll();
 }
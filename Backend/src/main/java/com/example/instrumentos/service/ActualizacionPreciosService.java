@@ -0,0 +1,207 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.ActualizacionPreciosDTO;
+import com.example.instrumentos.dto.PrecioHistoricoDTO;
+import com.example.instrumentos.dto.PrecioNuevoDTO;
+import com.example.instrumentos.dto.ResumenActualizacionPreciosDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+
+// Cambios masivos de precios (listas de proveedores o reglas del tipo "categoría X +8%").
+// Todo se aplica en una transacción con JDBC batch: un INSERT por lote en historial_precio_instrumento
+// y un UPDATE por lote del precio vigente, sin cargar entidades en el contexto de persistencia.
+// Las filas alcanzadas se leen con FOR UPDATE para que un cambio individual concurrente no se pierda.
+// Los registros nuevos se agregan a las líneas de tiempo de precios con los ids generados; sólo un cambio que
+// alcanza a muchos instrumentos descarta las líneas de tiempo completas.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class ActualizacionPreciosService {
+
+    private static final int LOTE = 1000;
+    // Por encima de esta cantidad conviene reconstruir el catálogo en memoria que recargar uno por uno
+    private static final int MAXIMO_INVALIDACION_PRECISA = 500;
+    private static final BigDecimal REDONDEO_POR_DEFECTO = new BigDecimal("0.01");
+
+    private static final String INSERT_HISTORIAL =
+            "INSERT INTO historial_precio_instrumento (id_instrumento, precio, fecha) VALUES (?, ?, ?)";
+    private static final String UPDATE_PRECIO_ACTUAL =
+            "UPDATE instrumentos SET precio_actual = ?, fecha_precio_actual = ? WHERE id_instrumento = ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CatalogoCache catalogoCache;
+    private final PrecioTimelineService precioTimeline;
+
+    public ResumenActualizacionPreciosDTO actualizar(ActualizacionPreciosDTO solicitud) {
+        boolean hayLista = solicitud.getPrecios() != null && !solicitud.getPrecios().isEmpty();
+        boolean hayRegla = solicitud.getPorcentaje() != null;
+        if (hayLista == hayRegla) {
+            throw new IllegalArgumentException("Indicar una lista de precios o un porcentaje, no ambos");
+        }
+
+        long inicio = System.nanoTime();
+        Date fecha = new Date();
+        List<Long> noEncontrados = new ArrayList<>();
+        Map<Long, Double> vigentes;
+        Map<Long, Double> nuevos;
+        if (hayLista) {
+            nuevos = validarLista(solicitud.getPrecios());
+            vigentes = bloquearPorIds(nuevos.keySet());
+            nuevos.keySet().stream().filter(id -> !vigentes.containsKey(id)).forEach(noEncontrados::add);
+            nuevos.keySet().retainAll(vigentes.keySet());
+        } else {
+            vigentes = bloquearPorRegla(solicitud.getIdCategoria(), solicitud.getMarca());
+            nuevos = aplicarRegla(vigentes, solicitud.getPorcentaje(), solicitud.getRedondeo());
+        }
+
+        // Sólo los que cambian generan historial
+        List<Map.Entry<Long, Double>> cambios = new ArrayList<>();
+        nuevos.forEach((id, precio) -> {
+            if (!precio.equals(vigentes.get(id))) {
+                cambios.add(Map.entry(id, precio));
+            }
+        });
+
+        Timestamp momento = new Timestamp(fecha.getTime());
+        List<Long> idsHistorial = insertarHistorial(cambios, momento);
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_PRECIO_ACTUAL, cambios, LOTE, (ps, cambio) -> {
+            ps.setDouble(1, cambio.getValue());
+            ps.setTimestamp(2, momento);
+            ps.setLong(3, cambio.getKey());
+        });
+
+        if (!cambios.isEmpty()) {
+            if (cambios.size() > MAXIMO_INVALIDACION_PRECISA) {
+                catalogoCache.invalidarTodo();
+                precioTimeline.recargar();
+            } else {
+                for (int i = 0; i < cambios.size(); i++) {
+                    Map.Entry<Long, Double> cambio = cambios.get(i);
+                    catalogoCache.invalidarInstrumento(cambio.getKey());
+                    precioTimeline.registrar(new PrecioHistoricoDTO(idsHistorial.get(i), cambio.getKey(), fecha,
+                            cambio.getValue()));
+                }
+            }
+        }
+
+        long duracionMs = (System.nanoTime() - inicio) / 1_000_000;
+        log.info("Actualización masiva de precios: {} alcanzados, {} actualizados en {} ms",
+                nuevos.size(), cambios.size(), duracionMs);
+        return new ResumenActualizacionPreciosDTO(nuevos.size(), cambios.size(), nuevos.size() - cambios.size(),
+                noEncontrados, fecha, duracionMs);
+    }
+
+    // Inserta el historial por lotes y devuelve los ids generados, en el orden de los cambios
+    private List<Long> insertarHistorial(List<Map.Entry<Long, Double>> cambios, Timestamp momento) {
+        List<Long> ids = new ArrayList<>(cambios.size());
+        for (int desde = 0; desde < cambios.size(); desde += LOTE) {
+            List<Map.Entry<Long, Double>> lote = cambios.subList(desde, Math.min(desde + LOTE, cambios.size()));
+            KeyHolder claves = new GeneratedKeyHolder();
+            jdbcTemplate.getJdbcTemplate().batchUpdate(con -> con.prepareStatement(INSERT_HISTORIAL, new String[]{"id"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, lote.get(i).getKey());
+                            ps.setDouble(2, lote.get(i).getValue());
+                            ps.setTimestamp(3, momento);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return lote.size();
+                        }
+                    }, claves);
+            claves.getKeyList().forEach(fila -> ids.add(((Number) fila.values().iterator().next()).longValue()));
+        }
+        return ids;
+    }
+
+    // Si un id aparece repetido vale el último precio
+    private static Map<Long, Double> validarLista(List<PrecioNuevoDTO> precios) {
+        Map<Long, Double> nuevos = new LinkedHashMap<>();
+        for (PrecioNuevoDTO precio : precios) {
+            if (precio == null || precio.getIdInstrumento() == null) {
+                throw new IllegalArgumentException("Cada precio debe indicar el idInstrumento");
+            }
+            if (precio.getPrecio() == null || precio.getPrecio() <= 0) {
+                throw new IllegalArgumentException("Precio inválido para el instrumento " + precio.getIdInstrumento());
+            }
+            nuevos.put(precio.getIdInstrumento(), precio.getPrecio());
+        }
+        return nuevos;
+    }
+
+    private static Map<Long, Double> aplicarRegla(Map<Long, Double> vigentes, double porcentaje, Double redondeo) {
+        if (porcentaje <= -100) {
+            throw new IllegalArgumentException("El porcentaje debe ser mayor que -100");
+        }
+        if (redondeo != null && redondeo <= 0) {
+            throw new IllegalArgumentException("El redondeo debe ser positivo");
+        }
+        BigDecimal paso = redondeo != null ? BigDecimal.valueOf(redondeo) : REDONDEO_POR_DEFECTO;
+        BigDecimal factor = BigDecimal.ONE.add(BigDecimal.valueOf(porcentaje).movePointLeft(2));
+
+        Map<Long, Double> nuevos = new LinkedHashMap<>();
+        vigentes.forEach((id, actual) -> {
+            BigDecimal precio = BigDecimal.valueOf(actual).multiply(factor)
+                    .divide(paso, 0, RoundingMode.HALF_UP).multiply(paso);
+            // Un paso de redondeo grande nunca deja un precio en cero
+            nuevos.put(id, precio.signum() > 0 ? precio.doubleValue() : paso.doubleValue());
+        });
+        return nuevos;
+    }
+
+    private Map<Long, Double> bloquearPorIds(Collection<Long> ids) {
+        Map<Long, Double> vigentes = new HashMap<>();
+        List<Long> lista = new ArrayList<>(ids);
+        for (int desde = 0; desde < lista.size(); desde += LOTE) {
+            List<Long> lote = lista.subList(desde, Math.min(desde + LOTE, lista.size()));
+            jdbcTemplate.query("SELECT id_instrumento, precio_actual FROM instrumentos " +
+                            "WHERE id_instrumento IN (:ids) FOR UPDATE",
+                    new MapSqlParameterSource("ids", lote),
+                    rs -> {
+                        double precio = rs.getDouble(2);
+                        vigentes.put(rs.getLong(1), rs.wasNull() ? null : precio);
+                    });
+        }
+        return vigentes;
+    }
+
+    // Instrumentos con precio vigente, de la categoría y la marca indicadas (sin filtro si son null)
+    private Map<Long, Double> bloquearPorRegla(Long idCategoria, String marca) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id_instrumento, precio_actual FROM instrumentos WHERE precio_actual IS NOT NULL");
+        MapSqlParameterSource parametros = new MapSqlParameterSource();
+        if (idCategoria != null) {
+            sql.append(" AND id_categoria_instrumento = :idCategoria");
+            parametros.addValue("idCategoria", idCategoria);
+        }
+        if (marca != null && !marca.isBlank()) {
+            sql.append(" AND LOWER(marca) = LOWER(:marca)");
+            parametros.addValue("marca", marca.trim());
+        }
+        sql.append(" ORDER BY id_instrumento FOR UPDATE");
+
+        Map<Long, Double> vigentes = new LinkedHashMap<>();
+        jdbcTemplate.query(sql.toString(), parametros,
+                rs -> {
+                    vigentes.put(rs.getLong(1), rs.getDouble(2));
+                });
+        return vigentes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.repository.HistorialPrecioArchivadoRepository;
+import com.example.instrumentos.repository.HistorialPrecioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Archivo del historial de precios: mueve a historial_precio_archivado los precios ya reemplazados
+// y más viejos que el horizonte configurado. El último precio de cada instrumento queda siempre en
+// el historial, y las consultas "precio al momento T" leen ambas tablas (ver PrecioTimelineService).
+// Cada lote se mueve en su propia transacción para no retener locks durante todo el recorrido.
+@Service
+@Slf4j
+public class ArchivoPreciosService {
+
+    private final HistorialPrecioRepository historialPrecioRepository;
+    private final HistorialPrecioArchivadoRepository archivadoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int horizonteDias;
+    private final int lote;
+
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+
+    public ArchivoPreciosService(HistorialPrecioRepository historialPrecioRepository,
+                                 HistorialPrecioArchivadoRepository archivadoRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${instrumentos.historial.archivo.horizonte-dias:365}") int horizonteDias,
+                                 @Value("${instrumentos.historial.archivo.lote:1000}") int lote) {
+        if (horizonteDias < 1 || lote < 1) {
+            throw new IllegalArgumentException("El horizonte y el lote de archivo deben ser positivos");
+        }
+        this.historialPrecioRepository = historialPrecioRepository;
+        this.archivadoRepository = archivadoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.horizonteDias = horizonteDias;
+        this.lote = lote;
+    }
+
+    @Scheduled(cron = "${instrumentos.historial.archivo.cron:0 30 3 * * *}")
+    public void archivarProgramado() {
+        archivar();
+    }
+
+    // Devuelve la cantidad de registros archivados (0 si ya hay un archivo en curso)
+    public int archivar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            log.info("Archivo del historial de precios ya en curso");
+            return 0;
+        }
+        try {
+            long inicio = System.nanoTime();
+            Date corte = Date.from(Instant.now().minus(horizonteDias, ChronoUnit.DAYS));
+            long[] ultimoId = {0L};
+            int total = 0;
+            int movidos;
+            do {
+                movidos = transactionTemplate.execute(status -> {
+                    List<Long> ids = historialPrecioRepository.findIdsReemplazadosAntesDe(corte, ultimoId[0], Limit.of(lote));
+                    if (ids.isEmpty()) {
+                        return 0;
+                    }
+                    archivadoRepository.archivar(ids);
+                    historialPrecioRepository.deleteByIdIn(ids);
+                    ultimoId[0] = ids.get(ids.size() - 1);
+                    return ids.size();
+                });
+                total += movidos;
+            } while (movidos == lote);
+
+            log.info("Historial de precios archivado: {} registros anteriores a {} en {} ms",
+                    total, corte, (System.nanoTime() - inicio) / 1_000_000);
+            return total;
+        } finally {
+            enCurso.set(false);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.event.CatalogoActualizadoEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Búsqueda de texto completo sobre el catálogo con un índice invertido en memoria.
+// El índice se construye en segundo plano (al arrancar y ante cada reconstrucción del catálogo)
+// y se actualiza de forma incremental con los cambios confirmados que anuncia CatalogoCache.
+// Construcciones y actualizaciones corren en orden en un único hilo propio: el listener sólo las encola.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BusquedaService {
+
+    public static final int LIMITE_POR_DEFECTO = 20;
+    public static final int LIMITE_MAXIMO = 100;
+
+    private final CatalogoCache catalogoCache;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService indexador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "indice-busqueda");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private IndiceBusqueda indice;
+
+    public boolean isListo() {
+        lock.readLock().lock();
+        try {
+            return indice != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Devuelve los instrumentos ordenados por relevancia o vacío si el índice todavía no está listo
+    public Optional<List<InstrumentoRequestDTO>> buscar(String consulta, Integer limite) {
+        int tope = (limite == null || limite <= 0) ? LIMITE_POR_DEFECTO : Math.min(limite, LIMITE_MAXIMO);
+
+        List<Long> ids;
+        lock.readLock().lock();
+        try {
+            if (indice == null) {
+                return Optional.empty();
+            }
+            ids = indice.buscar(consulta, tope);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<InstrumentoRequestDTO> resultados = new ArrayList<>(ids.size());
+        ids.forEach(id -> catalogoCache.findById(id).ifPresent(resultados::add));
+        return Optional.of(resultados);
+    }
+
+    // Se construye fuera del hilo principal para no demorar el arranque
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        indexador.execute(this::reconstruir);
+    }
+
+    // Los cambios publicados durante una construcción quedan en la cola detrás de ella y se aplican
+    // sobre el índice nuevo; aplicarlos dos veces no cambia el resultado
+    @EventListener
+    public void onCatalogoActualizado(CatalogoActualizadoEvent evento) {
+        try {
+            indexador.execute(evento.isCompleto() ? this::reconstruir : () -> aplicar(evento));
+        } catch (RejectedExecutionException e) {
+            log.debug("Cambio del catálogo descartado al detener: {}", e.getMessage());
+        }
+    }
+
+    private void reconstruir() {
+        long inicio = System.nanoTime();
+        try {
+            IndiceBusqueda nuevo = new IndiceBusqueda();
+            catalogoCache.findAll().forEach(nuevo::indexar);
+
+            lock.writeLock().lock();
+            try {
+                indice = nuevo;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Índice de búsqueda construido: {} instrumentos en {} ms",
+                    nuevo.size(), (System.nanoTime() - inicio) / 1_000_000);
+        } catch (RuntimeException e) {
+            log.error("Error al construir el índice de búsqueda: {}", e.getMessage(), e);
+        }
+    }
+
+    private void aplicar(CatalogoActualizadoEvent evento) {
+        lock.writeLock().lock();
+        try {
+            if (indice != null) {
+                evento.getEliminados().forEach(indice::quitar);
+                evento.getActualizados().forEach(indice::indexar);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        indexador.shutdownNow();
+    }
+}
@@ -0,0 +1,504 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.CatalogoCacheMetricasDTO;
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.event.CatalogoActualizadoEvent;
+import com.example.instrumentos.model.CategoriaInstrumento;
+import com.example.instrumentos.repository.CategoriaInstrumentoRepository;
+import com.example.instrumentos.repository.InstrumentoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Snapshot inmutable del catálogo en memoria (DTOs indexados por id, código y categoría).
+// Las lecturas no toman locks: leen la referencia volátil al snapshot vigente.
+// Las escrituras registran qué instrumentos/categorías cambiaron en la transacción; después del commit esos
+// cambios se encolan y un único hilo de fondo los aplica agrupados: recarga sólo esas filas y publica un
+// snapshot nuevo (copy-on-write). El hilo del pedido no espera la recarga ni a los índices derivados.
+// Los DTOs devueltos son compartidos: no deben modificarse.
+// Cada snapshot nuevo se anuncia con un CatalogoActualizadoEvent para los índices derivados.
+// Las versiones (global, de categorías, por categoría y por instrumento) avanzan después de publicar el snapshot
+// y sirven de ETag: una versión nueva nunca se asocia a datos viejos.
+@Component
+@Slf4j
+public class CatalogoCache {
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final CategoriaInstrumentoRepository categoriaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Snapshot snapshot;
+
+    private final ExecutorService aplicador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "catalogo-cache");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    // Cambios confirmados que el hilo de fondo todavía no tomó; los que llegan mientras tanto se suman acá
+    private final Object lockPendientes = new Object();
+    private Cambios pendientes;
+
+    // Se siembra con la hora para que los ETags no se repitan entre reinicios
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+    private volatile long versionBase = version.get();
+    private volatile long versionCategorias = version.get();
+    // Instrumentos modificados desde la última reconstrucción completa; el resto tiene versionBase
+    private final Map<Long, Long> versionesInstrumento = new ConcurrentHashMap<>();
+    // Ídem para el listado de cada categoría (instrumentos que entran, salen o cambian, o la categoría misma)
+    private final Map<Long, Long> versionesCategoria = new ConcurrentHashMap<>();
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder reconstrucciones = new LongAdder();
+    private final LongAdder actualizacionesParciales = new LongAdder();
+    private volatile long ultimaReconstruccionMs;
+    private volatile long ultimaActualizacionParcialMs;
+
+    public CatalogoCache(InstrumentoRepository instrumentoRepository,
+                         CategoriaInstrumentoRepository categoriaRepository,
+                         PlatformTransactionManager transactionManager,
+                         ApplicationEventPublisher eventPublisher) {
+        this.instrumentoRepository = instrumentoRepository;
+        this.categoriaRepository = categoriaRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    // ---- Lecturas ----
+
+    public List<InstrumentoRequestDTO> findAll() {
+        return obtenerSnapshot().todos;
+    }
+
+    public List<InstrumentoRequestDTO> findByCategoria(Long idCategoria) {
+        return obtenerSnapshot().porCategoria.getOrDefault(idCategoria, List.of());
+    }
+
+    public Optional<InstrumentoRequestDTO> findById(Long idInstrumento) {
+        InstrumentoRequestDTO dto = obtenerSnapshot().porId.get(idInstrumento);
+        if (dto != null) {
+            return Optional.of(dto);
+        }
+        // Puede haberse escrito por fuera de los servicios (p. ej. DataInitializer): consultar la base
+        fallos.increment();
+        Optional<InstrumentoRequestDTO> desdeBase = instrumentoRepository.findCatalogoById(idInstrumento);
+        desdeBase.ifPresent(encontrado -> invalidarInstrumento(encontrado.getIdInstrumento()));
+        return desdeBase;
+    }
+
+    // Varios instrumentos a la vez: los que no están en memoria se buscan juntos en una sola consulta
+    public Map<Long, InstrumentoRequestDTO> findAllById(Collection<Long> ids) {
+        Snapshot actual = obtenerSnapshot();
+        Map<Long, InstrumentoRequestDTO> encontrados = new HashMap<>();
+        List<Long> faltantes = new ArrayList<>();
+        for (Long id : ids) {
+            InstrumentoRequestDTO dto = actual.porId.get(id);
+            if (dto != null) {
+                encontrados.put(id, dto);
+            } else {
+                faltantes.add(id);
+            }
+        }
+        if (!faltantes.isEmpty()) {
+            fallos.add(faltantes.size());
+            for (InstrumentoRequestDTO desdeBase : instrumentoRepository.findCatalogoByIds(faltantes)) {
+                encontrados.put(desdeBase.getIdInstrumento(), desdeBase);
+                invalidarInstrumento(desdeBase.getIdInstrumento());
+            }
+        }
+        return encontrados;
+    }
+
+    // Página ordenada por id que empieza después del id indicado (keyset sobre el snapshot)
+    public List<InstrumentoRequestDTO> findPagina(Long idCategoria, Long despuesDe, int limite) {
+        Snapshot actual = obtenerSnapshot();
+        if (idCategoria == null) {
+            Collection<InstrumentoRequestDTO> desde = (despuesDe == null)
+                    ? actual.porId.values()
+                    : actual.porId.tailMap(despuesDe, false).values();
+            return desde.stream().limit(limite).toList();
+        }
+
+        // Las listas por categoría están ordenadas por id: búsqueda binaria del primer id mayor al cursor
+        List<InstrumentoRequestDTO> lista = actual.porCategoria.getOrDefault(idCategoria, List.of());
+        int inicio = 0;
+        if (despuesDe != null) {
+            int fin = lista.size();
+            while (inicio < fin) {
+                int medio = (inicio + fin) >>> 1;
+                if (lista.get(medio).getIdInstrumento() <= despuesDe) {
+                    inicio = medio + 1;
+                } else {
+                    fin = medio;
+                }
+            }
+        }
+        return lista.subList(inicio, Math.min(lista.size(), inicio + limite));
+    }
+
+    public Optional<InstrumentoRequestDTO> findByCodigo(String codigo) {
+        return Optional.ofNullable(obtenerSnapshot().porCodigo.get(codigo));
+    }
+
+    public List<CategoriaInstrumento> findCategorias() {
+        return List.copyOf(obtenerSnapshot().categorias.values());
+    }
+
+    public Optional<CategoriaInstrumento> findCategoriaById(Long idCategoria) {
+        return Optional.ofNullable(obtenerSnapshot().categorias.get(idCategoria));
+    }
+
+    // ---- Versiones ----
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getVersionCategorias() {
+        return versionCategorias;
+    }
+
+    public long getVersionInstrumento(Long idInstrumento) {
+        return versionesInstrumento.getOrDefault(idInstrumento, versionBase);
+    }
+
+    public long getVersionCategoria(Long idCategoria) {
+        return versionesCategoria.getOrDefault(idCategoria, versionBase);
+    }
+
+    public CatalogoCacheMetricasDTO getMetricas() {
+        Snapshot actual = snapshot;
+        return new CatalogoCacheMetricasDTO(
+                aciertos.sum(),
+                fallos.sum(),
+                reconstrucciones.sum(),
+                ultimaReconstruccionMs,
+                actualizacionesParciales.sum(),
+                ultimaActualizacionParcialMs,
+                actual != null ? actual.porId.size() : 0,
+                actual != null ? actual.categorias.size() : 0
+        );
+    }
+
+    // ---- Invalidación precisa (se aplica después del commit) ----
+
+    public void invalidarInstrumento(Long idInstrumento) {
+        registrarCambio(cambios -> cambios.instrumentos.add(idInstrumento));
+    }
+
+    public void invalidarCategoria(Long idCategoria) {
+        registrarCambio(cambios -> cambios.categorias.add(idCategoria));
+    }
+
+    public void invalidarTodo() {
+        registrarCambio(cambios -> cambios.todo = true);
+    }
+
+    private void registrarCambio(Consumer<Cambios> cambio) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Cambios cambios = new Cambios();
+            cambio.accept(cambios);
+            encolar(cambios);
+            return;
+        }
+
+        // Un único registro de cambios por transacción: varias escrituras se aplican juntas
+        Cambios cambios = (Cambios) TransactionSynchronizationManager.getResource(this);
+        if (cambios == null) {
+            Cambios nuevos = new Cambios();
+            TransactionSynchronizationManager.bindResource(this, nuevos);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CatalogoCache.this);
+                    if (status == STATUS_COMMITTED) {
+                        encolar(nuevos);
+                    }
+                }
+            });
+            cambios = nuevos;
+        }
+        cambio.accept(cambios);
+    }
+
+    // Sólo se programa una tarea si no había cambios pendientes: una ráfaga de commits se aplica en una recarga
+    private void encolar(Cambios cambios) {
+        boolean programar;
+        synchronized (lockPendientes) {
+            programar = pendientes == null;
+            if (programar) {
+                pendientes = cambios;
+            } else {
+                pendientes.sumar(cambios);
+            }
+        }
+        if (programar) {
+            try {
+                aplicador.execute(this::aplicarPendientes);
+            } catch (RejectedExecutionException e) {
+                // La aplicación se está deteniendo
+                log.debug("Cambios del catálogo descartados al detener: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void aplicarPendientes() {
+        Cambios cambios;
+        synchronized (lockPendientes) {
+            cambios = pendientes;
+            pendientes = null;
+        }
+        try {
+            aplicar(cambios);
+        } catch (RuntimeException e) {
+            log.error("Error al aplicar cambios del catálogo: {}", e.getMessage(), e);
+            snapshot = null;
+            avanzarVersionCompleta();
+        }
+    }
+
+    // Corre en el hilo de fondo; el monitor lo comparte sólo con la reconstrucción de la primera lectura
+    private synchronized void aplicar(Cambios cambios) {
+        Snapshot actual = snapshot;
+        if (actual == null) {
+            // Todavía no se construyó: la primera lectura ya verá los datos confirmados
+            avanzarVersionCompleta();
+            return;
+        }
+        if (cambios.todo) {
+            reconstruir();
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        List<InstrumentoRequestDTO> recargados = new ArrayList<>();
+        try {
+            snapshot = transactionTemplate.execute(status -> {
+                Map<Long, CategoriaInstrumento> categoriasRecargadas = new HashMap<>();
+
+                if (!cambios.instrumentos.isEmpty()) {
+                    recargados.addAll(instrumentoRepository.findCatalogoByIds(cambios.instrumentos));
+                }
+                if (!cambios.categorias.isEmpty()) {
+                    categoriaRepository.findAllById(cambios.categorias)
+                            .forEach(c -> categoriasRecargadas.put(c.getIdCategoriaInstrumento(), copiar(c)));
+                    // Un cambio de denominación se refleja en los instrumentos de la categoría
+                    recargados.addAll(instrumentoRepository.findCatalogoByCategorias(cambios.categorias));
+                }
+                return actual.con(recargados, cambios.instrumentos, categoriasRecargadas, cambios.categorias);
+            });
+            actualizacionesParciales.increment();
+        } catch (RuntimeException e) {
+            // Ante cualquier falla se descarta el snapshot: la próxima lectura lo reconstruye completo
+            log.error("Error al actualizar el catálogo en memoria: {}", e.getMessage(), e);
+            snapshot = null;
+            avanzarVersionCompleta();
+            return;
+        }
+        ultimaActualizacionParcialMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        Set<Long> eliminados = new HashSet<>(cambios.instrumentos);
+        recargados.forEach(dto -> eliminados.remove(dto.getIdInstrumento()));
+        // Categoría anterior y nueva de cada instrumento tocado: un instrumento que se mueve cambia ambos listados
+        Set<Long> categoriasAfectadas = new HashSet<>(cambios.categorias);
+        cambios.instrumentos.forEach(id -> {
+            InstrumentoRequestDTO anterior = actual.porId.get(id);
+            if (anterior != null) {
+                categoriasAfectadas.add(anterior.getIdCategoriaInstrumento());
+            }
+        });
+        recargados.forEach(dto -> {
+            InstrumentoRequestDTO anterior = actual.porId.get(dto.getIdInstrumento());
+            if (anterior != null) {
+                categoriasAfectadas.add(anterior.getIdCategoriaInstrumento());
+            }
+            categoriasAfectadas.add(dto.getIdCategoriaInstrumento());
+        });
+        avanzarVersion(recargados, cambios.instrumentos, categoriasAfectadas, !cambios.categorias.isEmpty());
+        eventPublisher.publishEvent(new CatalogoActualizadoEvent(
+                List.copyOf(recargados), Set.copyOf(eliminados), !cambios.categorias.isEmpty(), false));
+    }
+
+    // ---- Construcción ----
+
+    private Snapshot obtenerSnapshot() {
+        Snapshot actual = snapshot;
+        if (actual != null) {
+            aciertos.increment();
+            return actual;
+        }
+        fallos.increment();
+        synchronized (this) {
+            if (snapshot == null) {
+                reconstruir();
+            }
+            return snapshot;
+        }
+    }
+
+    private void reconstruir() {
+        snapshot = construir();
+        avanzarVersionCompleta();
+        eventPublisher.publishEvent(CatalogoActualizadoEvent.completo());
+    }
+
+    private Snapshot construir() {
+        long inicio = System.nanoTime();
+        Snapshot nuevo = transactionTemplate.execute(status -> {
+            Map<Long, CategoriaInstrumento> categorias = new TreeMap<>();
+            categoriaRepository.findAll().forEach(c -> categorias.put(c.getIdCategoriaInstrumento(), copiar(c)));
+            return Snapshot.desde(instrumentoRepository.findCatalogo(), categorias);
+        });
+        ultimaReconstruccionMs = (System.nanoTime() - inicio) / 1_000_000;
+        reconstrucciones.increment();
+        log.info("Catálogo en memoria reconstruido: {} instrumentos en {} ms",
+                nuevo.porId.size(), ultimaReconstruccionMs);
+        return nuevo;
+    }
+
+    private void avanzarVersion(List<InstrumentoRequestDTO> recargados, Set<Long> idsInstrumentos,
+                                Set<Long> idsCategorias, boolean categorias) {
+        long nueva = version.incrementAndGet();
+        idsInstrumentos.forEach(id -> versionesInstrumento.put(id, nueva));
+        recargados.forEach(dto -> versionesInstrumento.put(dto.getIdInstrumento(), nueva));
+        idsCategorias.stream().filter(Objects::nonNull).forEach(id -> versionesCategoria.put(id, nueva));
+        if (categorias) {
+            versionCategorias = nueva;
+        }
+    }
+
+    private void avanzarVersionCompleta() {
+        long nueva = version.incrementAndGet();
+        versionBase = nueva;
+        versionCategorias = nueva;
+        versionesInstrumento.clear();
+        versionesCategoria.clear();
+    }
+
+    private static CategoriaInstrumento copiar(CategoriaInstrumento categoria) {
+        return new CategoriaInstrumento(categoria.getIdCategoriaInstrumento(), categoria.getDenominacion(), null);
+    }
+
+    @PreDestroy
+    public void detener() {
+        aplicador.shutdownNow();
+    }
+
+    // Cambios acumulados durante una transacción (o entre dos pasadas del hilo de fondo)
+    private static final class Cambios {
+        private final Set<Long> instrumentos = new HashSet<>();
+        private final Set<Long> categorias = new HashSet<>();
+        private boolean todo;
+
+        private void sumar(Cambios otros) {
+            instrumentos.addAll(otros.instrumentos);
+            categorias.addAll(otros.categorias);
+            todo |= otros.todo;
+        }
+    }
+
+    // Vista inmutable del catálogo; nunca se modifica, se reemplaza
+    private static final class Snapshot {
+        private final NavigableMap<Long, InstrumentoRequestDTO> porId;
+        private final Map<String, InstrumentoRequestDTO> porCodigo;
+        private final Map<Long, List<InstrumentoRequestDTO>> porCategoria;
+        private final Map<Long, CategoriaInstrumento> categorias;
+        private final List<InstrumentoRequestDTO> todos;
+
+        private Snapshot(NavigableMap<Long, InstrumentoRequestDTO> porId,
+                         Map<String, InstrumentoRequestDTO> porCodigo,
+                         Map<Long, List<InstrumentoRequestDTO>> porCategoria,
+                         Map<Long, CategoriaInstrumento> categorias) {
+            this.porId = Collections.unmodifiableNavigableMap(porId);
+            this.porCodigo = Collections.unmodifiableMap(porCodigo);
+            this.porCategoria = Collections.unmodifiableMap(porCategoria);
+            this.categorias = Collections.unmodifiableMap(categorias);
+            this.todos = List.copyOf(porId.values());
+        }
+
+        private static Snapshot desde(List<InstrumentoRequestDTO> instrumentos, Map<Long, CategoriaInstrumento> categorias) {
+            NavigableMap<Long, InstrumentoRequestDTO> porId = new TreeMap<>();
+            Map<String, InstrumentoRequestDTO> porCodigo = new HashMap<>();
+            Map<Long, List<InstrumentoRequestDTO>> agrupados = new HashMap<>();
+            for (InstrumentoRequestDTO dto : instrumentos) {
+                porId.put(dto.getIdInstrumento(), dto);
+                porCodigo.put(dto.getCodigo(), dto);
+                agrupados.computeIfAbsent(dto.getIdCategoriaInstrumento(), k -> new ArrayList<>()).add(dto);
+            }
+            Map<Long, List<InstrumentoRequestDTO>> porCategoria = new HashMap<>();
+            agrupados.forEach((idCategoria, lista) -> porCategoria.put(idCategoria, List.copyOf(lista)));
+            return new Snapshot(porId, porCodigo, porCategoria, categorias);
+        }
+
+        // Copia del snapshot con los instrumentos/categorías recargados; los ids pedidos que no volvieron se eliminaron
+        private Snapshot con(List<InstrumentoRequestDTO> recargados, Set<Long> idsInstrumentos,
+                             Map<Long, CategoriaInstrumento> categoriasRecargadas, Set<Long> idsCategorias) {
+            NavigableMap<Long, InstrumentoRequestDTO> nuevoPorId = new TreeMap<>(porId);
+            Map<String, InstrumentoRequestDTO> nuevoPorCodigo = new HashMap<>(porCodigo);
+            Set<Long> categoriasAfectadas = new HashSet<>();
+            Set<Long> idsAfectados = new HashSet<>(idsInstrumentos);
+
+            Map<Long, InstrumentoRequestDTO> vigentes = new HashMap<>();
+            recargados.forEach(dto -> vigentes.put(dto.getIdInstrumento(), dto));
+            idsAfectados.addAll(vigentes.keySet());
+
+            for (Long id : idsAfectados) {
+                InstrumentoRequestDTO anterior = nuevoPorId.remove(id);
+                if (anterior != null) {
+                    nuevoPorCodigo.remove(anterior.getCodigo());
+                    categoriasAfectadas.add(anterior.getIdCategoriaInstrumento());
+                }
+                InstrumentoRequestDTO vigente = vigentes.get(id);
+                if (vigente != null) {
+                    nuevoPorId.put(id, vigente);
+                    nuevoPorCodigo.put(vigente.getCodigo(), vigente);
+                    categoriasAfectadas.add(vigente.getIdCategoriaInstrumento());
+                }
+            }
+
+            // Sólo se rearman las listas de las categorías tocadas
+            Map<Long, List<InstrumentoRequestDTO>> nuevoPorCategoria = new HashMap<>(porCategoria);
+            for (Long idCategoria : categoriasAfectadas) {
+                List<InstrumentoRequestDTO> lista = new ArrayList<>();
+                for (InstrumentoRequestDTO dto : porCategoria.getOrDefault(idCategoria, List.of())) {
+                    if (!idsAfectados.contains(dto.getIdInstrumento())) {
+                        lista.add(dto);
+                    }
+                }
+                vigentes.values().stream()
+                        .filter(dto -> idCategoria.equals(dto.getIdCategoriaInstrumento()))
+                        .forEach(lista::add);
+                lista.sort(Comparator.comparing(InstrumentoRequestDTO::getIdInstrumento));
+                if (lista.isEmpty()) {
+                    nuevoPorCategoria.remove(idCategoria);
+                } else {
+                    nuevoPorCategoria.put(idCategoria, List.copyOf(lista));
+                }
+            }
+
+            Map<Long, CategoriaInstrumento> nuevasCategorias = new TreeMap<>(categorias);
+            idsCategorias.forEach(nuevasCategorias::remove);
+            nuevasCategorias.putAll(categoriasRecargadas);
+
+            return new Snapshot(nuevoPorId, nuevoPorCodigo, nuevoPorCategoria, nuevasCategorias);
+        }
+    }
+}
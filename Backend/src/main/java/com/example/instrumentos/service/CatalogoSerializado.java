@@ -0,0 +1,206 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.event.CatalogoActualizadoEvent;
+import com.example.instrumentos.model.CategoriaInstrumento;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Respuestas del catálogo ya serializadas a JSON (y comprimidas con gzip) como arrays de bytes inmutables:
+// catálogo completo, listado de cada categoría, detalle de cada instrumento y listado de categorías.
+// Cada cuerpo guarda la versión del catálogo leída antes de serializar; sólo se sirve si ninguna
+// versión posterior lo invalidó. Ante cada cambio se regenera en segundo plano sólo lo desactualizado
+// (el catálogo completo y los listados e instrumentos cuya versión avanzó): mientras tanto los pedidos
+// se sirven con la serialización normal, nunca esperan.
+@Service
+@Slf4j
+public class CatalogoSerializado {
+
+    // Por debajo de este tamaño gzip no compensa
+    private static final int MINIMO_GZIP = 1024;
+
+    private final CatalogoCache catalogoCache;
+    private final ObjectWriter writer;
+
+    private final ExecutorService serializador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "catalogo-serializado");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private final AtomicBoolean programado = new AtomicBoolean();
+
+    private volatile Cuerpo catalogo;
+    private volatile Cuerpo categorias;
+    private volatile Map<Long, Cuerpo> porCategoria = Map.of();
+    private final Map<Long, Cuerpo> porInstrumento = new ConcurrentHashMap<>();
+
+    public CatalogoSerializado(CatalogoCache catalogoCache, ObjectMapper objectMapper) {
+        this.catalogoCache = catalogoCache;
+        // Mismo ObjectMapper que usan los controllers: los bytes son idénticos a la serialización normal
+        this.writer = objectMapper.writer();
+    }
+
+    public Optional<Cuerpo> findCatalogo() {
+        return vigente(catalogo, catalogoCache.getVersion());
+    }
+
+    public Optional<Cuerpo> findCategoria(Long idCategoria) {
+        return vigente(porCategoria.get(idCategoria), catalogoCache.getVersionCategoria(idCategoria));
+    }
+
+    public Optional<Cuerpo> findInstrumento(Long idInstrumento) {
+        return vigente(porInstrumento.get(idInstrumento), catalogoCache.getVersionInstrumento(idInstrumento));
+    }
+
+    public Optional<Cuerpo> findCategorias() {
+        return vigente(categorias, catalogoCache.getVersionCategorias());
+    }
+
+    // Un id desconocido (o eliminado) no tiene cuerpo y no programa nada: los cuerpos nuevos los genera
+    // la regeneración que dispara el propio cambio del catálogo
+    private Optional<Cuerpo> vigente(Cuerpo cuerpo, long versionActual) {
+        if (cuerpo == null) {
+            return Optional.empty();
+        }
+        if (cuerpo.version >= versionActual) {
+            return Optional.of(cuerpo);
+        }
+        programar();
+        return Optional.empty();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        programar();
+    }
+
+    @EventListener
+    public void onCatalogoActualizado(CatalogoActualizadoEvent evento) {
+        programar();
+    }
+
+    // Varios cambios seguidos se agrupan en una sola regeneración
+    private void programar() {
+        if (programado.compareAndSet(false, true)) {
+            serializador.execute(() -> {
+                programado.set(false);
+                try {
+                    regenerar();
+                } catch (RuntimeException e) {
+                    log.error("Error al serializar el catálogo: {}", e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    private void regenerar() {
+        long inicio = System.nanoTime();
+        // Las versiones se leen antes que los datos: un cuerpo nunca queda con una versión más nueva que su contenido
+        long version = catalogoCache.getVersion();
+        long versionCategorias = catalogoCache.getVersionCategorias();
+        List<InstrumentoRequestDTO> todos = catalogoCache.findAll();
+        List<CategoriaInstrumento> listaCategorias = catalogoCache.findCategorias();
+        int regenerados = 0;
+
+        if (catalogo == null || catalogo.version < version) {
+            catalogo = serializar(version, todos);
+            regenerados++;
+        }
+
+        // Sólo los listados de las categorías que cambiaron; el resto conserva su cuerpo
+        Map<Long, Cuerpo> anteriores = porCategoria;
+        Map<Long, Cuerpo> nuevas = new HashMap<>();
+        for (CategoriaInstrumento categoria : listaCategorias) {
+            Long idCategoria = categoria.getIdCategoriaInstrumento();
+            Cuerpo actual = anteriores.get(idCategoria);
+            if (actual == null || actual.version < catalogoCache.getVersionCategoria(idCategoria)) {
+                actual = serializar(version, catalogoCache.findByCategoria(idCategoria));
+                regenerados++;
+            }
+            nuevas.put(idCategoria, actual);
+        }
+        porCategoria = nuevas;
+        if (categorias == null || categorias.version < versionCategorias) {
+            categorias = serializar(versionCategorias, listaCategorias);
+            regenerados++;
+        }
+
+        // Sólo los instrumentos modificados desde su última serialización
+        Set<Long> vigentes = new HashSet<>();
+        for (InstrumentoRequestDTO dto : todos) {
+            vigentes.add(dto.getIdInstrumento());
+            Cuerpo actual = porInstrumento.get(dto.getIdInstrumento());
+            if (actual == null || actual.version < catalogoCache.getVersionInstrumento(dto.getIdInstrumento())) {
+                porInstrumento.put(dto.getIdInstrumento(), serializar(version, dto));
+                regenerados++;
+            }
+        }
+        porInstrumento.keySet().retainAll(vigentes);
+
+        if (regenerados > 0) {
+            log.debug("Catálogo serializado (versión {}): {} cuerpos en {} ms",
+                    version, regenerados, (System.nanoTime() - inicio) / 1_000_000);
+        }
+    }
+
+    private Cuerpo serializar(long version, Object valor) {
+        try {
+            byte[] json = writer.writeValueAsBytes(valor);
+            return new Cuerpo(version, json, comprimir(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el catálogo", e);
+        }
+    }
+
+    // Nivel rápido: se recomprime en cada cambio y la diferencia de tamaño con el máximo es chica para JSON
+    private static byte[] comprimir(byte[] json) {
+        if (json.length < MINIMO_GZIP) {
+            return null;
+        }
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(salida) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] comprimido = salida.toByteArray();
+        return comprimido.length < json.length ? comprimido : null;
+    }
+
+    @PreDestroy
+    public void detener() {
+        serializador.shutdownNow();
+    }
+
+    // Cuerpo de respuesta inmutable; gzip es null si no se comprime
+    @Getter
+    @AllArgsConstructor
+    public static final class Cuerpo {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzip;
+    }
+}
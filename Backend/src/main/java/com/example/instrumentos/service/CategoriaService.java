@@ -5,6 +5,7 @@ import com.example.instrumentos.repository.CategoriaInstrumentoRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -17,13 +18,21 @@ import java.util.Optional;
 public class CategoriaService {
 
     private final CategoriaInstrumentoRepository categoriaRepository;
+    private final CatalogoCache catalogoCache;
 
+    // Las lecturas se sirven desde el snapshot del catálogo en memoria
     public List<CategoriaInstrumento> findAll() {
-        return categoriaRepository.findAll();
+        return catalogoCache.findCategorias();
     }
 
     public Optional<CategoriaInstrumento> findById(Long id) {
-        return categoriaRepository.findById(id);
+        return catalogoCache.findCategoriaById(id);
+    }
+
+    // Versión de las categorías para ETags: no abre transacción ni consulta la base
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long getVersionCategorias() {
+        return catalogoCache.getVersionCategorias();
     }
 
     public CategoriaInstrumento save(CategoriaInstrumento categoria) {
@@ -33,7 +42,9 @@ public class CategoriaService {
                 throw new IllegalArgumentException("Ya existe una categoría con esa denominación");
             }
         }
-        return categoriaRepository.save(categoria);
+        CategoriaInstrumento guardada = categoriaRepository.save(categoria);
+        catalogoCache.invalidarCategoria(guardada.getIdCategoriaInstrumento());
+        return guardada;
     }
 
     public void deleteById(Long id) {
@@ -47,6 +58,7 @@ public class CategoriaService {
         }
 
         categoriaRepository.deleteById(id);
+        catalogoCache.invalidarCategoria(id);
     }
 
     // Este método ahora se maneja en DataInitializer
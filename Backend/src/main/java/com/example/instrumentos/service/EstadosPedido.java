@@ -0,0 +1,43 @@
+package com.example.instrumentos.service;
+
+import java.util.Map;
+import java.util.Set;
+
+// Estados de un pedido y transiciones permitidas. ENTREGADO y CANCELADO son finales
+public final class EstadosPedido {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String EN_PREPARACION = "EN_PREPARACION";
+    public static final String ENVIADO = "ENVIADO";
+    public static final String ENTREGADO = "ENTREGADO";
+    public static final String CANCELADO = "CANCELADO";
+
+    private static final Map<String, Set<String>> TRANSICIONES = Map.of(
+            PENDIENTE, Set.of(EN_PREPARACION, ENVIADO, CANCELADO),
+            EN_PREPARACION, Set.of(ENVIADO, CANCELADO),
+            ENVIADO, Set.of(ENTREGADO),
+            ENTREGADO, Set.of(),
+            CANCELADO, Set.of()
+    );
+
+    private EstadosPedido() {
+    }
+
+    public static boolean esValido(String estado) {
+        return TRANSICIONES.containsKey(estado);
+    }
+
+    public static boolean puedeCambiar(String actual, String nuevo) {
+        return TRANSICIONES.getOrDefault(actual, Set.of()).contains(nuevo);
+    }
+
+    // IllegalArgumentException si el estado no existe, IllegalStateException si no se permite desde el actual
+    public static void validarTransicion(String actual, String nuevo) {
+        if (!esValido(nuevo)) {
+            throw new IllegalArgumentException("Estado inválido: " + nuevo + ". Valores posibles: " + TRANSICIONES.keySet());
+        }
+        if (!puedeCambiar(actual, nuevo)) {
+            throw new IllegalStateException("No se puede pasar un pedido de " + actual + " a " + nuevo);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.instrumentos.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+// Exportación de pedidos con sus detalles a CSV (una fila por detalle; los pedidos sin detalles van en una fila).
+// Una sola consulta leída con cursor del servidor (useCursorFetch + fetch size) en orden de fecha y escrita
+// fila por fila: la memoria usada no depende de la cantidad de pedidos del rango.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportacionPedidosService {
+
+    private static final int FILAS_POR_FETCH = 1000;
+    private static final int FILAS_POR_FLUSH = 1000;
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String ENCABEZADO = "id_pedido,fecha,estado,id_usuario,email,total_pedido," +
+            "id_detalle_pedido,id_instrumento,instrumento,cantidad,precio_unitario,subtotal\r\n";
+
+    private static final String FILAS = "SELECT p.id_pedido, p.fecha, p.estado_actual, u.id_usuario, u.email, " +
+            "p.total_pedido, d.id_detalle_pedido, i.id_instrumento, i.denominacion, d.cantidad, d.precio_unitario, " +
+            "d.subtotal FROM pedidos p JOIN usuarios u ON u.id_usuario = p.id_usuario " +
+            "LEFT JOIN detalle_pedido d ON d.id_pedido = p.id_pedido " +
+            "LEFT JOIN instrumentos i ON i.id_instrumento = d.id_instrumento " +
+            "WHERE p.fecha >= ? AND p.fecha <= ? ORDER BY p.fecha, p.id_pedido, d.id_detalle_pedido";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Escribe el CSV en la salida; devuelve la cantidad de filas (sin el encabezado)
+    @Transactional(readOnly = true)
+    public long exportarCsv(Date desde, Date hasta, Writer salida) throws IOException {
+        if (desde.after(hasta)) {
+            throw new IllegalArgumentException("La fecha desde no puede ser posterior a hasta");
+        }
+        salida.write(ENCABEZADO);
+        long[] filas = {0};
+        StringBuilder linea = new StringBuilder(256);
+        try {
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(FILAS);
+                ps.setFetchSize(FILAS_POR_FETCH);
+                ps.setTimestamp(1, new Timestamp(desde.getTime()));
+                ps.setTimestamp(2, new Timestamp(hasta.getTime()));
+                return ps;
+            }, rs -> {
+                linea.setLength(0);
+                escribirFila(rs, linea);
+                try {
+                    salida.append(linea);
+                    if (++filas[0] % FILAS_POR_FLUSH == 0) {
+                        salida.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Normalmente el cliente cortó la descarga: se corta también la consulta
+            throw e.getCause();
+        }
+        salida.flush();
+        log.info("Exportación de pedidos {} - {}: {} filas", desde, hasta, filas[0]);
+        return filas[0];
+    }
+
+    private static void escribirFila(ResultSet rs, StringBuilder linea) throws SQLException {
+        linea.append(rs.getLong(1)).append(',');
+        linea.append(rs.getTimestamp(2).toLocalDateTime().format(FORMATO_FECHA)).append(',');
+        texto(linea, rs.getString(3)).append(',');
+        linea.append(rs.getLong(4)).append(',');
+        texto(linea, rs.getString(5)).append(',');
+        numero(linea, rs.getBigDecimal(6)).append(',');
+        numero(linea, rs.getBigDecimal(7)).append(',');
+        numero(linea, rs.getBigDecimal(8)).append(',');
+        texto(linea, rs.getString(9)).append(',');
+        numero(linea, rs.getBigDecimal(10)).append(',');
+        numero(linea, rs.getBigDecimal(11)).append(',');
+        numero(linea, rs.getBigDecimal(12)).append("\r\n");
+    }
+
+    // Sin notación científica; vacío si es NULL
+    private static StringBuilder numero(StringBuilder linea, BigDecimal valor) {
+        return valor == null ? linea : linea.append(valor.stripTrailingZeros().toPlainString());
+    }
+
+    // RFC 4180: entre comillas si tiene separadores, comillas o saltos de línea
+    private static StringBuilder texto(StringBuilder linea, String valor) {
+        if (valor == null) {
+            return linea;
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return linea.append(valor);
+        }
+        return linea.append('"').append(valor.replace("\"", "\"\"")).append('"');
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.FacetaValorDTO;
+import com.example.instrumentos.dto.FacetasResponseDTO;
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.event.CatalogoActualizadoEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Filtrado facetado del catálogo con bitmaps precalculados (un bit por id de instrumento)
+// por categoría, marca, banda de precio y disponibilidad. Los filtros combinados se resuelven
+// intersecando bitmaps y los conteos de cada faceta se calculan sobre el resto de los filtros.
+// Los ids de instrumento son autoincrementales y densos, por eso alcanza con java.util.BitSet.
+// Los cambios del catálogo se aplican en orden en un hilo propio: el listener sólo los encola.
+@Service
+@Slf4j
+public class FacetaService {
+
+    private final CatalogoCache catalogoCache;
+    private final double[] limitesPrecio;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService actualizador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "facetas-catalogo");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private Bitmaps bitmaps;
+
+    public FacetaService(CatalogoCache catalogoCache,
+                         @Value("${instrumentos.facetas.limites-precio:500,1000,2500,5000,10000}") double[] limitesPrecio) {
+        this.catalogoCache = catalogoCache;
+        this.limitesPrecio = limitesPrecio.clone();
+        Arrays.sort(this.limitesPrecio);
+    }
+
+    public FacetasResponseDTO filtrar(Set<Long> categorias, Set<String> marcas, Double precioMin, Double precioMax,
+                                      boolean soloEnStock, String cursor, Integer size) {
+        if (precioMin != null && precioMax != null && precioMin > precioMax) {
+            throw new IllegalArgumentException("El precio mínimo no puede ser mayor que el máximo");
+        }
+        int tamanio = Paginacion.normalizarTamanio(size);
+        Long despuesDe = Paginacion.leerCursorId(cursor);
+        // Los bits del BitSet son ints no negativos: un id fuera de ese rango no puede venir de una página anterior
+        if (despuesDe != null && (despuesDe < 0 || despuesDe >= Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+
+        Bitmaps actual = obtenerBitmaps();
+        lock.readLock().lock();
+        try {
+            BitSet filtroCategoria = actual.union(actual.porCategoria, categorias);
+            BitSet filtroMarca = actual.union(actual.porMarca, normalizarMarcas(marcas));
+            BitSet filtroPrecio = (precioMin == null && precioMax == null) ? null : actual.rangoPrecio(precioMin, precioMax);
+            BitSet filtroStock = soloEnStock ? actual.enStock : null;
+
+            BitSet resultado = interseccion(actual.todos, filtroCategoria, filtroMarca, filtroPrecio, filtroStock);
+
+            // Conteos disjuntivos: cada faceta ignora su propio filtro
+            Map<String, List<FacetaValorDTO>> facetas = new LinkedHashMap<>();
+            BitSet baseCategoria = interseccion(actual.todos, filtroMarca, filtroPrecio, filtroStock);
+            facetas.put("categoria", contar(actual.porCategoria, baseCategoria, this::etiquetaCategoria));
+            BitSet baseMarca = interseccion(actual.todos, filtroCategoria, filtroPrecio, filtroStock);
+            facetas.put("marca", contar(actual.porMarca, baseMarca, actual.nombresMarca::get));
+            BitSet basePrecio = interseccion(actual.todos, filtroCategoria, filtroMarca, filtroStock);
+            facetas.put("precio", contar(actual.porBanda, basePrecio, this::etiquetaBanda));
+            BitSet baseStock = interseccion(actual.todos, filtroCategoria, filtroMarca, filtroPrecio);
+            facetas.put("stock", List.of(new FacetaValorDTO("true", "En stock", cardinalidadInterseccion(baseStock, actual.enStock))));
+
+            // Página por id sobre el bitmap resultado (mismo cursor que el listado del catálogo)
+            List<InstrumentoRequestDTO> filas = new ArrayList<>(tamanio + 1);
+            int desde = despuesDe == null ? 0 : (int) (despuesDe + 1);
+            for (int id = resultado.nextSetBit(desde); id >= 0 && filas.size() <= tamanio; id = resultado.nextSetBit(id + 1)) {
+                catalogoCache.findById((long) id).ifPresent(filas::add);
+            }
+            String next = null;
+            if (filas.size() > tamanio) {
+                filas = filas.subList(0, tamanio);
+                next = Paginacion.cursorId(filas.get(tamanio - 1).getIdInstrumento());
+            }
+            return new FacetasResponseDTO(List.copyOf(filas), next, tamanio, resultado.cardinality(), facetas);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onCatalogoActualizado(CatalogoActualizadoEvent evento) {
+        try {
+            actualizador.execute(() -> aplicar(evento));
+        } catch (RejectedExecutionException e) {
+            log.debug("Cambio del catálogo descartado al detener: {}", e.getMessage());
+        }
+    }
+
+    private void aplicar(CatalogoActualizadoEvent evento) {
+        lock.writeLock().lock();
+        try {
+            if (bitmaps == null) {
+                // Todavía no se usó: se construye en la primera consulta
+                return;
+            }
+            if (evento.isCompleto()) {
+                bitmaps = construir();
+                return;
+            }
+            evento.getEliminados().forEach(bitmaps::quitar);
+            evento.getActualizados().forEach(bitmaps::indexar);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        actualizador.shutdownNow();
+    }
+
+    private Bitmaps obtenerBitmaps() {
+        lock.readLock().lock();
+        try {
+            if (bitmaps != null) {
+                return bitmaps;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (bitmaps == null) {
+                bitmaps = construir();
+            }
+            return bitmaps;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Bitmaps construir() {
+        long inicio = System.nanoTime();
+        Bitmaps nuevos = new Bitmaps();
+        catalogoCache.findAll().forEach(nuevos::indexar);
+        log.info("Facetas del catálogo construidas: {} instrumentos en {} ms",
+                nuevos.todos.cardinality(), (System.nanoTime() - inicio) / 1_000_000);
+        return nuevos;
+    }
+
+    private <K> List<FacetaValorDTO> contar(Map<K, BitSet> porValor, BitSet base, java.util.function.Function<K, String> etiqueta) {
+        List<FacetaValorDTO> valores = new ArrayList<>();
+        porValor.forEach((valor, bitmap) -> {
+            int cantidad = cardinalidadInterseccion(base, bitmap);
+            if (cantidad > 0) {
+                valores.add(new FacetaValorDTO(String.valueOf(valor), etiqueta.apply(valor), cantidad));
+            }
+        });
+        return valores;
+    }
+
+    private String etiquetaCategoria(Long idCategoria) {
+        return catalogoCache.findCategoriaById(idCategoria)
+                .map(c -> c.getDenominacion())
+                .orElse(String.valueOf(idCategoria));
+    }
+
+    private String etiquetaBanda(Integer banda) {
+        if (banda == 0) {
+            return "Hasta " + formatear(limitesPrecio[0]);
+        }
+        if (banda == limitesPrecio.length) {
+            return "Desde " + formatear(limitesPrecio[banda - 1]);
+        }
+        return formatear(limitesPrecio[banda - 1]) + " - " + formatear(limitesPrecio[banda]);
+    }
+
+    private static String formatear(double valor) {
+        return valor == Math.rint(valor) ? String.valueOf((long) valor) : String.valueOf(valor);
+    }
+
+    private static Set<String> normalizarMarcas(Set<String> marcas) {
+        if (marcas == null || marcas.isEmpty()) {
+            return marcas;
+        }
+        Set<String> normalizadas = new HashSet<>();
+        marcas.forEach(m -> normalizadas.add(claveMarca(m)));
+        return normalizadas;
+    }
+
+    private static String claveMarca(String marca) {
+        return marca == null ? "" : NormalizadorTexto.plegar(marca.trim());
+    }
+
+    private static BitSet interseccion(BitSet base, BitSet... filtros) {
+        BitSet resultado = (BitSet) base.clone();
+        for (BitSet filtro : filtros) {
+            if (filtro != null) {
+                resultado.and(filtro);
+            }
+        }
+        return resultado;
+    }
+
+    private static int cardinalidadInterseccion(BitSet a, BitSet b) {
+        BitSet copia = (BitSet) a.clone();
+        copia.and(b);
+        return copia.cardinality();
+    }
+
+    // Bitmaps por valor de cada faceta; se modifican sólo con el write lock tomado
+    private final class Bitmaps {
+        private final BitSet todos = new BitSet();
+        private final BitSet enStock = new BitSet();
+        private final Map<Long, BitSet> porCategoria = new TreeMap<>();
+        private final Map<String, BitSet> porMarca = new TreeMap<>();
+        private final Map<Integer, BitSet> porBanda = new TreeMap<>();
+        private final Map<String, String> nombresMarca = new HashMap<>();
+        // Pertenencia actual de cada instrumento, para poder moverlo al cambiar precio, stock o marca
+        private final Map<Long, InstrumentoRequestDTO> indexados = new HashMap<>();
+
+        private void indexar(InstrumentoRequestDTO dto) {
+            quitar(dto.getIdInstrumento());
+            int bit = Math.toIntExact(dto.getIdInstrumento());
+
+            todos.set(bit);
+            if (dto.getStock() != null && dto.getStock() > 0) {
+                enStock.set(bit);
+            }
+            if (dto.getIdCategoriaInstrumento() != null) {
+                porCategoria.computeIfAbsent(dto.getIdCategoriaInstrumento(), k -> new BitSet()).set(bit);
+            }
+            String marca = claveMarca(dto.getMarca());
+            porMarca.computeIfAbsent(marca, k -> new BitSet()).set(bit);
+            nombresMarca.putIfAbsent(marca, dto.getMarca());
+            if (dto.getPrecio() != null) {
+                porBanda.computeIfAbsent(banda(dto.getPrecio()), k -> new BitSet()).set(bit);
+            }
+            indexados.put(dto.getIdInstrumento(), dto);
+        }
+
+        private void quitar(Long idInstrumento) {
+            InstrumentoRequestDTO anterior = indexados.remove(idInstrumento);
+            if (anterior == null) {
+                return;
+            }
+            int bit = Math.toIntExact(idInstrumento);
+            todos.clear(bit);
+            enStock.clear(bit);
+            limpiar(porCategoria, anterior.getIdCategoriaInstrumento(), bit);
+            String marca = claveMarca(anterior.getMarca());
+            if (limpiar(porMarca, marca, bit)) {
+                nombresMarca.remove(marca);
+            }
+            if (anterior.getPrecio() != null) {
+                limpiar(porBanda, banda(anterior.getPrecio()), bit);
+            }
+        }
+
+        // Quita el bit y descarta el bitmap si quedó vacío; devuelve true en ese caso
+        private <K> boolean limpiar(Map<K, BitSet> porValor, K valor, int bit) {
+            BitSet bitmap = porValor.get(valor);
+            if (bitmap == null) {
+                return false;
+            }
+            bitmap.clear(bit);
+            if (bitmap.isEmpty()) {
+                porValor.remove(valor);
+                return true;
+            }
+            return false;
+        }
+
+        private <K> BitSet union(Map<K, BitSet> porValor, Set<K> valores) {
+            if (valores == null || valores.isEmpty()) {
+                return null;
+            }
+            BitSet resultado = new BitSet();
+            valores.forEach(valor -> {
+                BitSet bitmap = porValor.get(valor);
+                if (bitmap != null) {
+                    resultado.or(bitmap);
+                }
+            });
+            return resultado;
+        }
+
+        // Bandas completamente dentro del rango por bitmap; las de los bordes se verifican por precio exacto
+        private BitSet rangoPrecio(Double minimo, Double maximo) {
+            double min = minimo != null ? minimo : Double.NEGATIVE_INFINITY;
+            double max = maximo != null ? maximo : Double.POSITIVE_INFINITY;
+            BitSet resultado = new BitSet();
+            porBanda.forEach((banda, bitmap) -> {
+                double desde = banda == 0 ? Double.NEGATIVE_INFINITY : limitesPrecio[banda - 1];
+                double hasta = banda == limitesPrecio.length ? Double.POSITIVE_INFINITY : limitesPrecio[banda];
+                if (hasta <= min || desde > max) {
+                    return;
+                }
+                if (desde >= min && hasta <= max) {
+                    resultado.or(bitmap);
+                    return;
+                }
+                for (int bit = bitmap.nextSetBit(0); bit >= 0; bit = bitmap.nextSetBit(bit + 1)) {
+                    Double precio = indexados.get((long) bit).getPrecio();
+                    if (precio >= min && precio <= max) {
+                        resultado.set(bit);
+                    }
+                }
+            });
+            return resultado;
+        }
+
+        private int banda(double precio) {
+            int banda = 0;
+            while (banda < limitesPrecio.length && precio >= limitesPrecio[banda]) {
+                banda++;
+            }
+            return banda;
+        }
+    }
+}
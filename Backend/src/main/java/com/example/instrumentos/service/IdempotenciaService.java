@@ -0,0 +1,229 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.model.IdempotenciaPedido;
+import com.example.instrumentos.repository.IdempotenciaPedidoRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Claves de idempotencia para la creación de pedidos (header Idempotency-Key).
+// La primera ejecución inserta la clave (tabla con clave única por usuario) antes de crear el pedido y guarda
+// la respuesta en esa misma transacción: un reintento devuelve esa respuesta sin volver a ejecutar nada ni
+// tocar el stock. Si otra ejecución ya tiene la clave, la inserción falla antes de crear nada.
+// Los reintentos simultáneos esperan a que termine la primera ejecución. Las respuestas recientes se
+// mantienen también en memoria (cantidad acotada) y todas vencen pasado el TTL.
+@Service
+@Slf4j
+public class IdempotenciaService {
+
+    public static final int LARGO_MAXIMO_CLAVE = 100;
+    // Vueltas por clave ocupada o primera ejecución fallida antes de rendirse con 409
+    private static final int MAXIMO_INTENTOS = 3;
+    private static final String RESTRICCION_CLAVE = "uk_idempotencia_usuario_clave";
+
+    private final IdempotenciaPedidoRepository repository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlMs;
+    private final long esperaMs;
+
+    // LRU acotado: la tabla es la fuente de verdad, la memoria evita ir a la base en reintentos seguidos
+    private final Map<String, Respuesta> recientes;
+    private final ConcurrentHashMap<String, CompletableFuture<Respuesta>> enCurso = new ConcurrentHashMap<>();
+
+    public IdempotenciaService(IdempotenciaPedidoRepository repository,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${instrumentos.idempotencia.ttl-horas:24}") int ttlHoras,
+                               @Value("${instrumentos.idempotencia.max-en-memoria:10000}") int maximoEnMemoria,
+                               @Value("${instrumentos.idempotencia.espera-ms:30000}") long esperaMs) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttlMs = TimeUnit.HOURS.toMillis(ttlHoras);
+        this.esperaMs = esperaMs;
+        this.recientes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Respuesta> eldest) {
+                return size() > maximoEnMemoria;
+            }
+        });
+    }
+
+    // Ejecuta la acción una sola vez por (usuario, clave) y devuelve su respuesta serializada.
+    // Si la acción falla no se guarda nada (el pedido se revirtió) y un reintento la vuelve a ejecutar.
+    // IllegalStateException si la clave ya se usó con otra solicitud o la primera ejecución no termina a tiempo
+    public Respuesta ejecutar(Long idUsuario, String clave, Object solicitud, int estado, Supplier<?> accion) {
+        if (clave.isBlank() || clave.length() > LARGO_MAXIMO_CLAVE) {
+            throw new IllegalArgumentException("Idempotency-Key inválida (1 a " + LARGO_MAXIMO_CLAVE + " caracteres)");
+        }
+        String llave = idUsuario + ":" + clave;
+        String huella = huella(solicitud);
+
+        for (int intento = 0; intento < MAXIMO_INTENTOS; intento++) {
+            Respuesta guardada = buscar(llave, idUsuario, clave);
+            if (guardada != null) {
+                return repetir(guardada, huella);
+            }
+
+            CompletableFuture<Respuesta> propia = new CompletableFuture<>();
+            CompletableFuture<Respuesta> otra = enCurso.putIfAbsent(llave, propia);
+            if (otra != null) {
+                try {
+                    return repetir(otra.get(esperaMs, TimeUnit.MILLISECONDS), huella);
+                } catch (ExecutionException e) {
+                    // La primera ejecución falló sin guardar nada: se vuelve a intentar
+                    continue;
+                } catch (TimeoutException e) {
+                    throw new IllegalStateException("Un pedido con esta Idempotency-Key todavía se está procesando");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Espera interrumpida");
+                }
+            }
+
+            try {
+                // Pudo terminar otra ejecución entre la búsqueda y el registro
+                guardada = buscar(llave, idUsuario, clave);
+                if (guardada != null) {
+                    propia.complete(guardada);
+                    return repetir(guardada, huella);
+                }
+                Respuesta nueva = transactionTemplate.execute(status -> {
+                    Date ahora = new Date();
+                    long expira = ahora.getTime() + ttlMs;
+                    repository.deleteVencida(idUsuario, clave, ahora);
+                    IdempotenciaPedido registro = registrar(new IdempotenciaPedido(null, idUsuario, clave, huella,
+                            estado, "", ahora, new Date(expira)));
+                    String cuerpo = serializar(accion.get());
+                    registro.setCuerpo(cuerpo);
+                    return new Respuesta(estado, cuerpo, huella, expira, false);
+                });
+                recientes.put(llave, nueva);
+                propia.complete(nueva);
+                return nueva;
+            } catch (ClaveOcupadaException e) {
+                // Otra instancia tiene la misma clave: no se creó nada y vale su respuesta
+                log.info("Idempotency-Key {} ya registrada por otra ejecución", clave);
+                propia.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                propia.completeExceptionally(e);
+                throw e;
+            } finally {
+                enCurso.remove(llave, propia);
+            }
+        }
+        throw new IllegalStateException("No se pudo registrar la Idempotency-Key: reintentar más tarde");
+    }
+
+    // La clave va en su propia sentencia, antes de la acción: una violación de la clave única sólo puede venir
+    // de acá. Con la fila ya insertada, otra transacción con la misma clave espera a que esta termine
+    private IdempotenciaPedido registrar(IdempotenciaPedido registro) {
+        try {
+            return repository.saveAndFlush(registro);
+        } catch (DataIntegrityViolationException e) {
+            if (violaClaveUnica(e)) {
+                throw new ClaveOcupadaException();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean violaClaveUnica(DataIntegrityViolationException e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            String texto = (causa instanceof ConstraintViolationException violacion && violacion.getConstraintName() != null)
+                    ? violacion.getConstraintName() : causa.getMessage();
+            if (texto != null && texto.toLowerCase(Locale.ROOT).contains(RESTRICCION_CLAVE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Scheduled(cron = "${instrumentos.idempotencia.limpieza-cron:0 15 * * * *}")
+    public void limpiarVencidas() {
+        Integer borradas = transactionTemplate.execute(status -> repository.deleteVencidas(new Date()));
+        synchronized (recientes) {
+            recientes.values().removeIf(Respuesta::vencida);
+        }
+        if (borradas != null && borradas > 0) {
+            log.info("Claves de idempotencia vencidas eliminadas: {}", borradas);
+        }
+    }
+
+    private Respuesta buscar(String llave, Long idUsuario, String clave) {
+        Respuesta enMemoria = recientes.get(llave);
+        if (enMemoria != null && !enMemoria.vencida()) {
+            return enMemoria;
+        }
+        return repository.findByIdUsuarioAndClave(idUsuario, clave)
+                .filter(registro -> registro.getExpira().after(new Date()))
+                .map(registro -> {
+                    Respuesta respuesta = new Respuesta(registro.getEstado(), registro.getCuerpo(), registro.getHuella(),
+                            registro.getExpira().getTime(), false);
+                    recientes.put(llave, respuesta);
+                    return respuesta;
+                })
+                .orElse(null);
+    }
+
+    private static Respuesta repetir(Respuesta guardada, String huella) {
+        if (!guardada.huella.equals(huella)) {
+            throw new IllegalStateException("La Idempotency-Key ya se usó con un pedido distinto");
+        }
+        return new Respuesta(guardada.estado, guardada.cuerpo, guardada.huella, guardada.expira, true);
+    }
+
+    private String serializar(Object valor) {
+        try {
+            return objectMapper.writeValueAsString(valor);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta", e);
+        }
+    }
+
+    private String huella(Object solicitud) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(solicitud));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No se pudo calcular la huella de la solicitud", e);
+        }
+    }
+
+    private static final class ClaveOcupadaException extends RuntimeException {
+        private ClaveOcupadaException() {
+            super("La Idempotency-Key ya está registrada");
+        }
+    }
+
+    // Respuesta guardada (JSON); repetida indica que no se ejecutó en esta llamada
+    @Getter
+    @AllArgsConstructor
+    public static final class Respuesta {
+        private final int estado;
+        private final String cuerpo;
+        private final String huella;
+        private final long expira;
+        private final boolean repetida;
+
+        private boolean vencida() {
+            return expira <= System.currentTimeMillis();
+        }
+    }
+}
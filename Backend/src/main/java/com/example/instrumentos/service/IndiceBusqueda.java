@@ -0,0 +1,232 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+
+import java.util.*;
+
+// Índice invertido en memoria sobre denominación, marca y descripción con ranking BM25.
+// Cada campo pesa distinto en la frecuencia del término (BM25F simplificado).
+// Tolera errores de tipeo de una edición (índice de borrados estilo SymSpell) y completa el último
+// término por prefijo. No es thread-safe: BusquedaService sincroniza el acceso.
+class IndiceBusqueda {
+
+    private static final float PESO_DENOMINACION = 3f;
+    private static final float PESO_MARCA = 2f;
+    private static final float PESO_DESCRIPCION = 1f;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Penalización para coincidencias aproximadas (typo o prefijo)
+    private static final double FACTOR_APROXIMADO = 0.5;
+    private static final int LARGO_MINIMO_TYPO = 4;
+    private static final int LARGO_MINIMO_PREFIJO = 3;
+    private static final int MAXIMO_EXPANSIONES_PREFIJO = 20;
+
+    // término -> (id instrumento -> frecuencia ponderada)
+    private final Map<String, Map<Long, Float>> postings = new HashMap<>();
+    // vocabulario ordenado para expansión por prefijo
+    private final NavigableSet<String> vocabulario = new TreeSet<>();
+    // variante con un carácter borrado -> términos del vocabulario que la generan
+    private final Map<String, Set<String>> borrados = new HashMap<>();
+    // id instrumento -> términos indexados (para poder quitar el documento)
+    private final Map<Long, Map<String, Float>> documentos = new HashMap<>();
+    private final Map<Long, Float> largos = new HashMap<>();
+    private double largoTotal;
+
+    int size() {
+        return documentos.size();
+    }
+
+    void indexar(InstrumentoRequestDTO dto) {
+        quitar(dto.getIdInstrumento());
+
+        Map<String, Float> frecuencias = new HashMap<>();
+        acumular(frecuencias, dto.getDenominacion(), PESO_DENOMINACION);
+        acumular(frecuencias, dto.getMarca(), PESO_MARCA);
+        acumular(frecuencias, dto.getDescripcion(), PESO_DESCRIPCION);
+
+        float largo = 0f;
+        for (Map.Entry<String, Float> entrada : frecuencias.entrySet()) {
+            String termino = entrada.getKey();
+            Map<Long, Float> lista = postings.get(termino);
+            if (lista == null) {
+                lista = new HashMap<>();
+                postings.put(termino, lista);
+                agregarAlVocabulario(termino);
+            }
+            lista.put(dto.getIdInstrumento(), entrada.getValue());
+            largo += entrada.getValue();
+        }
+        documentos.put(dto.getIdInstrumento(), frecuencias);
+        largos.put(dto.getIdInstrumento(), largo);
+        largoTotal += largo;
+    }
+
+    void quitar(Long idInstrumento) {
+        Map<String, Float> frecuencias = documentos.remove(idInstrumento);
+        if (frecuencias == null) {
+            return;
+        }
+        for (String termino : frecuencias.keySet()) {
+            Map<Long, Float> lista = postings.get(termino);
+            if (lista != null) {
+                lista.remove(idInstrumento);
+                if (lista.isEmpty()) {
+                    postings.remove(termino);
+                    quitarDelVocabulario(termino);
+                }
+            }
+        }
+        Float largo = largos.remove(idInstrumento);
+        if (largo != null) {
+            largoTotal -= largo;
+        }
+    }
+
+    // Devuelve los ids ordenados por puntaje descendente (a lo sumo "limite")
+    List<Long> buscar(String consulta, int limite) {
+        List<String> terminos = NormalizadorTexto.terminos(consulta);
+        if (terminos.isEmpty() || documentos.isEmpty()) {
+            return List.of();
+        }
+
+        double largoPromedio = largoTotal / documentos.size();
+        Map<Long, Double> puntajes = new HashMap<>();
+        for (int i = 0; i < terminos.size(); i++) {
+            boolean ultimo = i == terminos.size() - 1;
+            expandir(terminos.get(i), ultimo).forEach((termino, factor) ->
+                    puntuar(termino, factor, largoPromedio, puntajes));
+        }
+
+        // Top-k con un heap acotado en vez de ordenar todos los candidatos
+        PriorityQueue<Map.Entry<Long, Double>> mejores = new PriorityQueue<>(
+                Map.Entry.<Long, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())));
+        for (Map.Entry<Long, Double> entrada : puntajes.entrySet()) {
+            mejores.offer(entrada);
+            if (mejores.size() > limite) {
+                mejores.poll();
+            }
+        }
+        List<Long> ids = new ArrayList<>(mejores.size());
+        while (!mejores.isEmpty()) {
+            ids.add(mejores.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    // Término exacto, más variantes a una edición y, para el último término, completados por prefijo
+    private Map<String, Double> expandir(String termino, boolean ultimo) {
+        Map<String, Double> expansiones = new HashMap<>();
+        if (postings.containsKey(termino)) {
+            expansiones.put(termino, 1.0);
+        }
+
+        if (termino.length() >= LARGO_MINIMO_TYPO) {
+            Set<String> candidatos = new HashSet<>(borrados.getOrDefault(termino, Set.of()));
+            for (String variante : variantesConBorrado(termino)) {
+                if (postings.containsKey(variante)) {
+                    candidatos.add(variante);
+                }
+                candidatos.addAll(borrados.getOrDefault(variante, Set.of()));
+            }
+            for (String candidato : candidatos) {
+                if (!expansiones.containsKey(candidato) && distanciaMaximaUno(termino, candidato)) {
+                    expansiones.put(candidato, FACTOR_APROXIMADO);
+                }
+            }
+        }
+
+        if (ultimo && termino.length() >= LARGO_MINIMO_PREFIJO) {
+            int agregados = 0;
+            for (String candidato : vocabulario.subSet(termino, false, termino + Character.MAX_VALUE, false)) {
+                if (agregados++ >= MAXIMO_EXPANSIONES_PREFIJO) {
+                    break;
+                }
+                expansiones.putIfAbsent(candidato, FACTOR_APROXIMADO);
+            }
+        }
+        return expansiones;
+    }
+
+    private void puntuar(String termino, double factor, double largoPromedio, Map<Long, Double> puntajes) {
+        Map<Long, Float> lista = postings.get(termino);
+        if (lista == null) {
+            return;
+        }
+        int n = documentos.size();
+        int df = lista.size();
+        double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+        for (Map.Entry<Long, Float> entrada : lista.entrySet()) {
+            double tf = entrada.getValue();
+            double largo = largos.get(entrada.getKey());
+            double puntaje = idf * (tf * (K1 + 1)) / (tf + K1 * (1 - B + B * largo / largoPromedio));
+            puntajes.merge(entrada.getKey(), factor * puntaje, Double::sum);
+        }
+    }
+
+    private static void acumular(Map<String, Float> frecuencias, String texto, float peso) {
+        for (String termino : NormalizadorTexto.terminos(texto)) {
+            frecuencias.merge(termino, peso, Float::sum);
+        }
+    }
+
+    private void agregarAlVocabulario(String termino) {
+        vocabulario.add(termino);
+        if (termino.length() >= LARGO_MINIMO_TYPO) {
+            for (String variante : variantesConBorrado(termino)) {
+                borrados.computeIfAbsent(variante, k -> new HashSet<>()).add(termino);
+            }
+        }
+    }
+
+    private void quitarDelVocabulario(String termino) {
+        vocabulario.remove(termino);
+        if (termino.length() >= LARGO_MINIMO_TYPO) {
+            for (String variante : variantesConBorrado(termino)) {
+                Set<String> terminos = borrados.get(variante);
+                if (terminos != null) {
+                    terminos.remove(termino);
+                    if (terminos.isEmpty()) {
+                        borrados.remove(variante);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<String> variantesConBorrado(String termino) {
+        Set<String> variantes = new HashSet<>();
+        for (int i = 0; i < termino.length(); i++) {
+            variantes.add(termino.substring(0, i) + termino.substring(i + 1));
+        }
+        return variantes;
+    }
+
+    // Distancia de Damerau-Levenshtein (transposición adyacente) menor o igual a uno
+    static boolean distanciaMaximaUno(String a, String b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        int la = a.length();
+        int lb = b.length();
+        if (Math.abs(la - lb) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < Math.min(la, lb) && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (la == lb) {
+            // sustitución o transposición
+            if (a.substring(i + 1).equals(b.substring(i + 1))) {
+                return true;
+            }
+            return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.substring(i + 2).equals(b.substring(i + 2));
+        }
+        // inserción o borrado
+        return la > lb ? a.substring(i + 1).equals(b.substring(i)) : a.substring(i).equals(b.substring(i + 1));
+    }
+}
@@ -4,16 +4,26 @@ import com.example.instrumentos.model.CategoriaInstrumento;
 import com.example.instrumentos.model.HistorialPrecioInstrumento;
 import com.example.instrumentos.model.Instrumento;
 import com.example.instrumentos.repository.CategoriaInstrumentoRepository;
+import com.example.instrumentos.repository.HistorialPrecioArchivadoRepository;
 import com.example.instrumentos.repository.HistorialPrecioRepository;
 import com.example.instrumentos.repository.InstrumentoRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.dto.PaginaDTO;
+import com.example.instrumentos.dto.PrecioHistoricoDTO;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +34,11 @@ public class InstrumentoService {
     private final InstrumentoRepository instrumentoRepository;
     private final CategoriaInstrumentoRepository categoriaRepository;
     private final HistorialPrecioRepository historialPrecioRepository;
+    private final HistorialPrecioArchivadoRepository historialPrecioArchivadoRepository;
+    private final CatalogoCache catalogoCache;
+    private final PrecioTimelineService precioTimeline;
+    private final StockLedgerService stockLedger;
+    private final EntityManager entityManager;
 
     public List<Instrumento> findAll() {
         return instrumentoRepository.findAll();
@@ -34,7 +49,55 @@ public class InstrumentoService {
     }
 
     public Optional<Instrumento> findById(Long id) {
-        return instrumentoRepository.findByIdWithHistorialPrecios(id);
+        return instrumentoRepository.findById(id);
+    }
+
+    // Lecturas del catálogo: se sirven desde el snapshot en memoria (ver CatalogoCache)
+    @Transactional(readOnly = true)
+    public List<InstrumentoRequestDTO> findAllCatalogo() {
+        return catalogoCache.findAll();
+    }
+
+    @Transactional(readOnly = true)
+    public List<InstrumentoRequestDTO> findCatalogoByCategoria(Long idCategoria) {
+        return catalogoCache.findByCategoria(idCategoria);
+    }
+
+    // Página del catálogo ordenada por id (cursor keyset)
+    @Transactional(readOnly = true)
+    public PaginaDTO<InstrumentoRequestDTO> findCatalogoPagina(Long idCategoria, String cursor, Integer size) {
+        int tamanio = Paginacion.normalizarTamanio(size);
+        List<InstrumentoRequestDTO> filas = catalogoCache.findPagina(idCategoria, Paginacion.leerCursorId(cursor), tamanio + 1);
+        return Paginacion.pagina(filas, tamanio, dto -> Paginacion.cursorId(dto.getIdInstrumento()));
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<InstrumentoRequestDTO> findCatalogoById(Long id) {
+        return catalogoCache.findById(id);
+    }
+
+    // Vista histórica: los mismos instrumentos con el precio vigente en la fecha indicada.
+    // Se devuelven copias: los DTOs del catálogo en memoria son compartidos
+    public List<InstrumentoRequestDTO> conPrecioAl(List<InstrumentoRequestDTO> dtos, Date fecha) {
+        List<InstrumentoRequestDTO> historicos = new ArrayList<>(dtos.size());
+        for (InstrumentoRequestDTO dto : dtos) {
+            historicos.add(new InstrumentoRequestDTO(dto.getIdInstrumento(), dto.getCodigo(), dto.getDenominacion(),
+                    dto.getMarca(), dto.getStock(), dto.getDescripcion(), dto.getImagen(),
+                    dto.getIdCategoriaInstrumento(), dto.getCategoria(),
+                    precioTimeline.precioAl(dto.getIdInstrumento(), fecha).orElse(null)));
+        }
+        return historicos;
+    }
+
+    // Versiones del catálogo para ETags: no abren transacción ni consultan la base
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long getVersionCatalogo() {
+        return catalogoCache.getVersion();
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long getVersionInstrumento(Long id) {
+        return catalogoCache.getVersionInstrumento(id);
     }
 
     public Instrumento save(Instrumento instrumento) {
@@ -58,18 +121,36 @@ public class InstrumentoService {
             }
         }
 
+        // El precio vigente sólo cambia registrando una entrada en el historial
+        Double precioSolicitado = instrumento.getPrecioActual();
+        Integer stockAnterior = null;
+        if (instrumento.getIdInstrumento() == null) {
+            instrumento.setPrecioActual(null);
+            instrumento.setFechaPrecioActual(null);
+        } else {
+            Optional<Instrumento> existente = instrumentoRepository.findById(instrumento.getIdInstrumento());
+            if (existente.isPresent()) {
+                instrumento.setPrecioActual(existente.get().getPrecioActual());
+                instrumento.setFechaPrecioActual(existente.get().getFechaPrecioActual());
+                stockAnterior = existente.get().getStock();
+            }
+        }
+
         // Guardar el instrumento
         Instrumento savedInstrumento = instrumentoRepository.save(instrumento);
 
-        // Si se proporciona un precio y es un nuevo instrumento, crear historial de precio
-        if (instrumento.getIdInstrumento() == null && instrumento.getPrecioActual() != null) {
-            HistorialPrecioInstrumento historialPrecio = new HistorialPrecioInstrumento(
-                    savedInstrumento,
-                    instrumento.getPrecioActual()
-            );
-            historialPrecioRepository.save(historialPrecio);
+        // Con el stock en memoria, sólo un cambio explícito de stock lo reemplaza
+        if (stockLedger.isHabilitado() && savedInstrumento.getStock() != null
+                && !savedInstrumento.getStock().equals(stockAnterior)) {
+            stockLedger.establecer(savedInstrumento.getIdInstrumento(), savedInstrumento.getStock());
+        }
+
+        // Si se proporciona un precio distinto al vigente, crear historial de precio
+        if (precioSolicitado != null && !precioSolicitado.equals(savedInstrumento.getPrecioActual())) {
+            registrarPrecio(savedInstrumento, precioSolicitado);
         }
 
+        catalogoCache.invalidarInstrumento(savedInstrumento.getIdInstrumento());
         return savedInstrumento;
     }
 
@@ -84,6 +165,11 @@ public class InstrumentoService {
         }
 
         instrumentoRepository.deleteById(id);
+        // El archivo no tiene FK al instrumento: se limpia a mano
+        historialPrecioArchivadoRepository.deleteByIdInstrumento(id);
+        catalogoCache.invalidarInstrumento(id);
+        precioTimeline.quitar(id);
+        stockLedger.quitar(id);
     }
 
     // Actualizar el precio de un instrumento (crea nuevo registro en historial)
@@ -94,40 +180,108 @@ public class InstrumentoService {
                 .orElseThrow(() -> new IllegalArgumentException("Instrumento no encontrado"));
 
         // Crear nuevo registro en el historial de precios
-        HistorialPrecioInstrumento nuevoHistorial = new HistorialPrecioInstrumento(instrumento, nuevoPrecio);
-        historialPrecioRepository.save(nuevoHistorial);
+        registrarPrecio(instrumento, nuevoPrecio);
 
         log.info("Precio actualizado correctamente");
         return instrumento;
     }
 
-    // Actualizar stock después de una venta
+    // Recalcular el precio vigente de todos los instrumentos desde el historial (reparación/backfill)
+    public int recalcularPreciosActuales() {
+        int actualizados = instrumentoRepository.recalcularPreciosActuales();
+        catalogoCache.invalidarTodo();
+        log.info("Precio vigente recalculado para {} instrumentos", actualizados);
+        return actualizados;
+    }
+
+    // Registra el precio en el historial y actualiza el precio vigente en la misma transacción
+    private void registrarPrecio(Instrumento instrumento, Double precio) {
+        HistorialPrecioInstrumento historial = historialPrecioRepository.save(
+                new HistorialPrecioInstrumento(instrumento, precio));
+        instrumento.setPrecioActual(historial.getPrecio());
+        instrumento.setFechaPrecioActual(historial.getFecha());
+        instrumentoRepository.save(instrumento);
+        catalogoCache.invalidarInstrumento(instrumento.getIdInstrumento());
+        precioTimeline.registrar(new PrecioHistoricoDTO(historial.getId(), instrumento.getIdInstrumento(),
+                historial.getFecha(), historial.getPrecio()));
+    }
+
+    // Actualizar stock después de una venta: descuento relativo y condicionado (ver descontarStock),
+    // nunca leer, modificar y guardar la fila entera
     public Instrumento actualizarStock(Long idInstrumento, Integer cantidadVendida) {
         log.info("Actualizando stock del instrumento {} - Cantidad vendida: {}", idInstrumento, cantidadVendida);
 
+        descontarStock(new TreeMap<>(Map.of(idInstrumento, cantidadVendida)));
+
         Instrumento instrumento = instrumentoRepository.findById(idInstrumento)
                 .orElseThrow(() -> new IllegalArgumentException("Instrumento no encontrado"));
+        return stockLedger.isHabilitado() ? conStockEnMemoria(instrumento) : instrumento;
+    }
 
-        Integer stockActual = instrumento.getStock();
-        if (stockActual < cantidadVendida) {
-            throw new IllegalArgumentException("Stock insuficiente. Stock actual: " + stockActual);
+    // Descuenta el stock de varios instrumentos con UPDATE condicionales, siempre en orden de id:
+    // pedidos concurrentes bloquean las filas en el mismo orden y no pueden vender de más.
+    // Llamar antes de cargar esos instrumentos en la transacción (el UPDATE no refresca entidades ya cargadas)
+    public void descontarStock(SortedMap<Long, Integer> cantidades) {
+        if (stockLedger.isHabilitado()) {
+            // Reserva en memoria, sin bloquear filas; se vuelca a la base por lotes
+            Long sinStock = stockLedger.reservar(cantidades);
+            if (sinStock != null) {
+                String nombre = catalogoCache.findById(sinStock).map(InstrumentoRequestDTO::getDenominacion)
+                        .orElse(String.valueOf(sinStock));
+                throw new IllegalArgumentException("Stock insuficiente para " + nombre +
+                        ". Stock disponible: " + stockLedger.disponible(sinStock).orElse(0));
+            }
+            return;
         }
-
-        instrumento.setStock(stockActual - cantidadVendida);
-
-        return instrumentoRepository.save(instrumento);
+        cantidades.forEach((idInstrumento, cantidad) -> {
+            if (instrumentoRepository.descontarStock(idInstrumento, cantidad) == 0) {
+                Instrumento instrumento = instrumentoRepository.findById(idInstrumento)
+                        .orElseThrow(() -> new IllegalArgumentException("Instrumento no encontrado: " + idInstrumento));
+                throw new IllegalArgumentException("Stock insuficiente para " + instrumento.getDenominacion() +
+                        ". Stock disponible: " + instrumento.getStock());
+            }
+            catalogoCache.invalidarInstrumento(idInstrumento);
+        });
     }
 
-    // Reponer stock
+    // Reponer stock con un UPDATE relativo: no pisa descuentos ni cambios de precio confirmados después de leer la fila
     public Instrumento reponerStock(Long idInstrumento, Integer cantidadReponer) {
         log.info("Reponiendo stock del instrumento {} - Cantidad: {}", idInstrumento, cantidadReponer);
 
         Instrumento instrumento = instrumentoRepository.findById(idInstrumento)
                 .orElseThrow(() -> new IllegalArgumentException("Instrumento no encontrado"));
 
-        instrumento.setStock(instrumento.getStock() + cantidadReponer);
+        reponerStock(new TreeMap<>(Map.of(idInstrumento, cantidadReponer)));
 
-        return instrumentoRepository.save(instrumento);
+        if (stockLedger.isHabilitado()) {
+            // En memoria se repone al confirmar la transacción
+            instrumento = conStockEnMemoria(instrumento);
+            instrumento.setStock(instrumento.getStock() + cantidadReponer);
+            return instrumento;
+        }
+        entityManager.refresh(instrumento);
+        return instrumento;
+    }
+
+    // Devuelve el stock de varios instrumentos (cancelaciones y eliminaciones) con un UPDATE relativo por instrumento,
+    // en orden de id
+    public void reponerStock(SortedMap<Long, Integer> cantidades) {
+        cantidades.forEach((idInstrumento, cantidad) -> {
+            if (stockLedger.isHabilitado()) {
+                stockLedger.reponer(idInstrumento, cantidad);
+                return;
+            }
+            instrumentoRepository.reponerStock(idInstrumento, cantidad);
+            catalogoCache.invalidarInstrumento(idInstrumento);
+        });
+    }
+
+    // La columna stock la escribe sólo el volcado del stock en memoria: la entidad se desacopla
+    // antes de mostrarle el valor en memoria, para que no se guarde al hacer flush
+    private Instrumento conStockEnMemoria(Instrumento instrumento) {
+        entityManager.detach(instrumento);
+        stockLedger.disponible(instrumento.getIdInstrumento()).ifPresent(instrumento::setStock);
+        return instrumento;
     }
 
     public InstrumentoRequestDTO toInstrumentoRequest(Instrumento instrumento) {
@@ -144,13 +298,8 @@ public class InstrumentoService {
             dto.setIdCategoriaInstrumento(instrumento.getCategoriaInstrumento().getIdCategoriaInstrumento());
             dto.setCategoria(instrumento.getCategoriaInstrumento().getDenominacion());
         }
-        // Setea precio más nuevo
-        HistorialPrecioInstrumento historial = historialPrecioRepository.findTopByInstrumento_IdInstrumentoOrderByFechaDesc(instrumento.getIdInstrumento());
-        if (historial != null) {
-            dto.setPrecio(historial.getPrecio());
-        } else {
-            dto.setPrecio(null);
-        }
+        // Setea precio vigente (columna desnormalizada, sin consultar el historial)
+        dto.setPrecio(instrumento.getPrecioActual());
         return dto;
     }
 
@@ -0,0 +1,67 @@
+package com.example.instrumentos.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Normalización de texto en español para el índice de búsqueda:
+// minúsculas, sin acentos (batería -> bateria), sin palabras vacías y con un stemming liviano
+// (plurales y vocal final de género: guitarras/guitarra -> guitarr).
+public final class NormalizadorTexto {
+
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9]+");
+
+    private static final Set<String> PALABRAS_VACIAS = Set.of(
+            "a", "al", "con", "de", "del", "el", "en", "la", "las", "lo", "los",
+            "o", "para", "por", "se", "sin", "su", "sus", "un", "una", "unos", "unas", "y"
+    );
+
+    private NormalizadorTexto() {
+    }
+
+    public static List<String> terminos(String texto) {
+        List<String> terminos = new ArrayList<>();
+        if (texto == null || texto.isBlank()) {
+            return terminos;
+        }
+        for (String palabra : SEPARADORES.split(plegar(texto))) {
+            if (!palabra.isEmpty() && !PALABRAS_VACIAS.contains(palabra)) {
+                terminos.add(raiz(palabra));
+            }
+        }
+        return terminos;
+    }
+
+    // Minúsculas y sin diacríticos
+    public static String plegar(String texto) {
+        String descompuesto = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return DIACRITICOS.matcher(descompuesto).replaceAll("");
+    }
+
+    // Stemming liviano: quita plurales y la vocal final en palabras largas
+    static String raiz(String palabra) {
+        if (palabra.length() <= 3 || Character.isDigit(palabra.charAt(palabra.length() - 1))) {
+            return palabra;
+        }
+        String raiz = palabra;
+        if (raiz.endsWith("ces") && raiz.length() > 4) {
+            raiz = raiz.substring(0, raiz.length() - 3) + "z";
+        } else if (raiz.endsWith("es") && raiz.length() > 4 && !esVocal(raiz.charAt(raiz.length() - 3))) {
+            raiz = raiz.substring(0, raiz.length() - 2);
+        } else if (raiz.endsWith("s") && raiz.length() > 3) {
+            raiz = raiz.substring(0, raiz.length() - 1);
+        }
+        if (raiz.length() > 4 && esVocal(raiz.charAt(raiz.length() - 1))) {
+            raiz = raiz.substring(0, raiz.length() - 1);
+        }
+        return raiz;
+    }
+
+    private static boolean esVocal(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+}
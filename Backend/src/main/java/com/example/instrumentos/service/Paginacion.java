@@ -0,0 +1,85 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.PaginaDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+// Utilidades de paginación por cursor (keyset): el cursor codifica la clave de orden del último elemento
+// devuelto, así cada página se resuelve con un rango sobre el índice sin importar su profundidad.
+public final class Paginacion {
+
+    public static final int TAMANIO_POR_DEFECTO = 50;
+    public static final int TAMANIO_MAXIMO = 200;
+
+    private Paginacion() {
+    }
+
+    public static int normalizarTamanio(Integer size) {
+        if (size == null || size <= 0) {
+            return TAMANIO_POR_DEFECTO;
+        }
+        return Math.min(size, TAMANIO_MAXIMO);
+    }
+
+    // Arma la página a partir de una consulta que pidió size + 1 filas para saber si hay siguiente
+    public static <T> PaginaDTO<T> pagina(List<T> filas, int size, Function<T, String> cursorDe) {
+        if (filas.size() > size) {
+            List<T> items = filas.subList(0, size);
+            return new PaginaDTO<>(List.copyOf(items), cursorDe.apply(items.get(size - 1)), size);
+        }
+        return new PaginaDTO<>(filas, null, size);
+    }
+
+    // ---- Cursores ----
+
+    public static String cursorId(Long id) {
+        return codificar(String.valueOf(id));
+    }
+
+    public static Long leerCursorId(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(decodificar(cursor));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+
+    public static String cursorFechaId(Date fecha, Long id) {
+        return codificar(fecha.getTime() + ":" + id);
+    }
+
+    // Devuelve {fecha en milisegundos, id} o null si no hay cursor
+    public static long[] leerCursorFechaId(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] partes = decodificar(cursor).split(":");
+        if (partes.length != 2) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+        try {
+            return new long[]{Long.parseLong(partes[0]), Long.parseLong(partes[1])};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+
+    private static String codificar(String valor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodificar(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+}
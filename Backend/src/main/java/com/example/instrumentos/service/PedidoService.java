@@ -1,16 +1,31 @@
 package com.example.instrumentos.service;
 
+import com.example.instrumentos.dto.DetallePedidoDTO;
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.dto.PaginaDTO;
+import com.example.instrumentos.dto.PedidoDTO;
+import com.example.instrumentos.dto.ResultadoCambioEstadoDTO;
+import com.example.instrumentos.dto.ResumenCambioEstadosDTO;
 import com.example.instrumentos.model.*;
 import com.example.instrumentos.repository.*;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -18,26 +33,131 @@ import java.util.Optional;
 @Transactional
 public class PedidoService {
 
+    // Cada cuántas filas se vacía el contexto de persistencia al recorrer con cursor
+    private static final int LOTE_STREAMING = 500;
+    // Pedidos por consulta IN al completar detalles y estados
+    private static final int LOTE_IN = 1000;
+    // Pedidos por cambio de estado en lote: se bloquean y validan con una sola consulta IN
+    private static final int MAXIMO_CAMBIO_ESTADOS = LOTE_IN;
+
+    private static final String INSERT_DETALLE = "INSERT INTO detalle_pedido " +
+            "(id_pedido, id_instrumento, cantidad, precio_unitario, subtotal) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_ESTADO = "INSERT INTO estados_pedido (estado, fecha, id_pedido) VALUES (?, ?, ?)";
+
     private final PedidoRepository pedidoRepository;
     private final UsuarioRepository usuarioRepository;
     private final InstrumentoRepository instrumentoRepository;
     private final DetallePedidoRepository detallePedidoRepository;
     private final EstadoPedidoRepository estadoPedidoRepository;
     private final InstrumentoService instrumentoService;
+    private final PrecioTimelineService precioTimeline;
+    private final CatalogoCache catalogoCache;
+    private final VentasDiariasService ventasDiarias;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // Obtener todos los pedidos, opcionalmente sólo los que están en un estado
+    @Transactional(readOnly = true)
+    public List<PedidoDTO> findAll(String estado) {
+        return completar(estado == null
+                ? pedidoRepository.findResumenes()
+                : pedidoRepository.findResumenesByEstado(validarEstado(estado)));
+    }
 
-    // Obtener todos los pedidos
-    public List<Pedido> findAll() {
-        return pedidoRepository.findAll();
+    // Recorre todos los pedidos (más recientes primero) con un cursor de la base, sin acumularlos en memoria.
+    // Se completan de a LOTE_STREAMING: detalles y estados con una consulta por lote
+    @Transactional(readOnly = true)
+    public void forEachPedido(Consumer<PedidoDTO> accion) {
+        try (Stream<PedidoDTO> pedidos = pedidoRepository.streamAll()) {
+            List<PedidoDTO> lote = new ArrayList<>(LOTE_STREAMING);
+            pedidos.forEach(pedido -> {
+                lote.add(pedido);
+                if (lote.size() == LOTE_STREAMING) {
+                    completar(lote).forEach(accion);
+                    lote.clear();
+                }
+            });
+            completar(lote).forEach(accion);
+        }
+    }
+
+    // Página de pedidos, más recientes primero (cursor keyset sobre fecha + id); estado filtra en la consulta
+    @Transactional(readOnly = true)
+    public PaginaDTO<PedidoDTO> findPagina(String estado, String cursor, Integer size) {
+        int tamanio = Paginacion.normalizarTamanio(size);
+        long[] desde = Paginacion.leerCursorFechaId(cursor);
+        List<PedidoDTO> filas;
+        if (estado == null) {
+            filas = (desde == null)
+                    ? pedidoRepository.findPrimeraPagina(Limit.of(tamanio + 1))
+                    : pedidoRepository.findPaginaDespuesDe(new Date(desde[0]), desde[1], Limit.of(tamanio + 1));
+        } else {
+            String filtro = validarEstado(estado);
+            filas = (desde == null)
+                    ? pedidoRepository.findPrimeraPaginaByEstado(filtro, Limit.of(tamanio + 1))
+                    : pedidoRepository.findPaginaByEstadoDespuesDe(filtro, new Date(desde[0]), desde[1], Limit.of(tamanio + 1));
+        }
+        return completar(Paginacion.pagina(filas, tamanio, p -> Paginacion.cursorFechaId(p.getFecha(), p.getIdPedido())));
     }
 
     // Buscar pedido por ID
-    public Optional<Pedido> findById(Long id) {
-        return pedidoRepository.findByIdWithDetalles(id);
+    @Transactional(readOnly = true)
+    public Optional<PedidoDTO> findById(Long id) {
+        return pedidoRepository.findResumenById(id).map(pedido -> completar(List.of(pedido)).get(0));
     }
 
     // Obtener pedidos de un usuario específico
-    public List<Pedido> findByUsuarioId(Long usuarioId) {
-        return pedidoRepository.findByUsuario_IdUsuario(usuarioId);
+    @Transactional(readOnly = true)
+    public List<PedidoDTO> findByUsuarioId(Long usuarioId) {
+        return completar(pedidoRepository.findResumenesByUsuario(usuarioId));
+    }
+
+    // Página de pedidos de un usuario, más recientes primero
+    @Transactional(readOnly = true)
+    public PaginaDTO<PedidoDTO> findPaginaByUsuarioId(Long usuarioId, String cursor, Integer size) {
+        int tamanio = Paginacion.normalizarTamanio(size);
+        long[] desde = Paginacion.leerCursorFechaId(cursor);
+        List<PedidoDTO> filas = (desde == null)
+                ? pedidoRepository.findPrimeraPaginaByUsuario(usuarioId, Limit.of(tamanio + 1))
+                : pedidoRepository.findPaginaByUsuarioDespuesDe(usuarioId, new Date(desde[0]), desde[1], Limit.of(tamanio + 1));
+        return completar(Paginacion.pagina(filas, tamanio, p -> Paginacion.cursorFechaId(p.getFecha(), p.getIdPedido())));
+    }
+
+    private static String validarEstado(String estado) {
+        String normalizado = estado.trim().toUpperCase();
+        if (!EstadosPedido.esValido(normalizado)) {
+            throw new IllegalArgumentException("Estado inválido: " + estado);
+        }
+        return normalizado;
+    }
+
+    private PaginaDTO<PedidoDTO> completar(PaginaDTO<PedidoDTO> pagina) {
+        completar(pagina.getItems());
+        return pagina;
+    }
+
+    // Agrega detalles, estados e instrumentos a los pedidos con una consulta por tipo cada LOTE_IN pedidos
+    // (los instrumentos salen del catálogo en memoria), en lugar de cargas perezosas por pedido
+    private List<PedidoDTO> completar(List<PedidoDTO> pedidos) {
+        for (int desde = 0; desde < pedidos.size(); desde += LOTE_IN) {
+            List<PedidoDTO> lote = pedidos.subList(desde, Math.min(desde + LOTE_IN, pedidos.size()));
+            Map<Long, PedidoDTO> porId = new HashMap<>();
+            lote.forEach(pedido -> porId.put(pedido.getIdPedido(), pedido));
+
+            List<DetallePedidoDTO> detalles = detallePedidoRepository.findResumenesByPedidos(porId.keySet());
+            Set<Long> idsInstrumento = new HashSet<>();
+            detalles.forEach(detalle -> idsInstrumento.add(detalle.getIdInstrumento()));
+            Map<Long, InstrumentoRequestDTO> instrumentos = catalogoCache.findAllById(idsInstrumento);
+            for (DetallePedidoDTO detalle : detalles) {
+                detalle.setInstrumento(instrumentos.get(detalle.getIdInstrumento()));
+                porId.get(detalle.getIdPedido()).getDetalles().add(detalle);
+            }
+
+            estadoPedidoRepository.findResumenesByPedidos(porId.keySet())
+                    .forEach(estado -> porId.get(estado.getIdPedido()).getEstados().add(estado));
+        }
+        return pedidos;
     }
 
     // Crear un nuevo pedido
@@ -60,105 +180,253 @@ public class PedidoService {
         }
 
         // Procesar los detalles del pedido
-        if (pedido.getDetalles() == null || pedido.getDetalles().isEmpty()) {
-            throw new IllegalArgumentException("El pedido debe tener al menos un detalle");
-        }
+        SortedMap<Long, Integer> cantidades = cantidadesPorInstrumento(pedido.getDetalles());
 
-        // Guardar el pedido primero
-        Pedido savedPedido = pedidoRepository.save(pedido);
+        // Descuento atómico del stock; si algún instrumento no alcanza se revierte todo el pedido
+        instrumentoService.descontarStock(cantidades);
 
-        // Procesar cada detalle
-        List<DetallePedido> detallesGuardados = new ArrayList<>();
-        double total = 0.0;
+        // Todos los instrumentos en una consulta (ya con el stock descontado)
+        Map<Long, Instrumento> instrumentos = new HashMap<>();
+        instrumentoRepository.findAllById(cantidades.keySet())
+                .forEach(instrumento -> instrumentos.put(instrumento.getIdInstrumento(), instrumento));
 
-        for (DetallePedido detalle : pedido.getDetalles()) {
-            // Obtener el instrumento
-            Instrumento instrumento = instrumentoRepository
-                    .findById(detalle.getInstrumento().getIdInstrumento())
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "Instrumento no encontrado: " + detalle.getInstrumento().getIdInstrumento()));
-
-            // Verificar stock disponible
-            if (instrumento.getStock() < detalle.getCantidad()) {
-                throw new IllegalArgumentException(
-                        "Stock insuficiente para " + instrumento.getDenominacion() +
-                                ". Stock disponible: " + instrumento.getStock());
+        // Precio vigente en cada detalle: el pedido no cambia si el precio cambia después
+        List<DetallePedido> solicitados = pedido.getDetalles();
+        double total = 0.0;
+        for (DetallePedido detalle : solicitados) {
+            Instrumento instrumento = instrumentos.get(detalle.getInstrumento().getIdInstrumento());
+            if (instrumento.getPrecioActual() == null) {
+                throw new IllegalArgumentException("El instrumento " + instrumento.getDenominacion() + " no tiene precio");
             }
-
-            // Actualizar stock
-            instrumentoService.actualizarStock(instrumento.getIdInstrumento(), detalle.getCantidad());
-
-            // Configurar el detalle
-            detalle.setPedido(savedPedido);
             detalle.setInstrumento(instrumento);
-
-            // Guardar el detalle
-            DetallePedido detalleGuardado = detallePedidoRepository.save(detalle);
-            detallesGuardados.add(detalleGuardado);
-
-            // Sumar al total
-            total += instrumento.getPrecioActual() * detalle.getCantidad();
+            detalle.setPrecioUnitario(instrumento.getPrecioActual());
+            detalle.setSubtotal(instrumento.getPrecioActual() * detalle.getCantidad());
+            total += detalle.getSubtotal();
         }
 
-        savedPedido.setDetalles(detallesGuardados);
+        // El pedido se guarda sin detalles (ya con el total); los detalles se insertan aparte en batch
+        pedido.setDetalles(new ArrayList<>());
+        pedido.setTotalPedido(total);
+        pedido.setEstadoActual(EstadosPedido.PENDIENTE);
+        Pedido savedPedido = pedidoRepository.save(pedido);
+
+        KeyHolder claves = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_DETALLE, new String[]{"id_detalle_pedido"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        DetallePedido detalle = solicitados.get(i);
+                        ps.setLong(1, savedPedido.getIdPedido());
+                        ps.setLong(2, detalle.getInstrumento().getIdInstrumento());
+                        ps.setInt(3, detalle.getCantidad());
+                        ps.setDouble(4, detalle.getPrecioUnitario());
+                        ps.setDouble(5, detalle.getSubtotal());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return solicitados.size();
+                    }
+                }, claves);
+        ventasDiarias.sumar(savedPedido.getFecha(), solicitados);
 
         // Crear el estado inicial del pedido
-        EstadoPedido estadoInicial = new EstadoPedido("PENDIENTE", savedPedido);
+        EstadoPedido estadoInicial = new EstadoPedido(EstadosPedido.PENDIENTE, savedPedido);
         estadoPedidoRepository.save(estadoInicial);
 
+        // La respuesta lleva los detalles insertados, armados en memoria sin volver a leerlos. El pedido se separa
+        // del contexto de persistencia para que la cascada no los inserte otra vez al hacer flush
+        entityManager.detach(savedPedido);
+        List<Map<String, Object>> ids = claves.getKeyList();
+        for (int i = 0; i < solicitados.size(); i++) {
+            DetallePedido detalle = solicitados.get(i);
+            detalle.setIdDetallePedido(((Number) ids.get(i).values().iterator().next()).longValue());
+            detalle.setPedido(savedPedido);
+        }
+        savedPedido.setDetalles(new ArrayList<>(solicitados));
+
         log.info("Pedido creado con ID: {} - Total: ${}", savedPedido.getIdPedido(), total);
 
         return savedPedido;
     }
 
+    // Validación previa a encolar un pedido asincrónico: usuario, detalles e instrumentos existentes.
+    // El stock y los precios se verifican recién al confirmarlo
+    @Transactional(readOnly = true)
+    public void validarSolicitud(Pedido pedido) {
+        if (pedido.getUsuario() == null || pedido.getUsuario().getIdUsuario() == null) {
+            throw new IllegalArgumentException("El pedido debe tener un usuario asignado");
+        }
+        if (!usuarioRepository.existsById(pedido.getUsuario().getIdUsuario())) {
+            throw new IllegalArgumentException("Usuario no encontrado");
+        }
+        SortedMap<Long, Integer> cantidades = cantidadesPorInstrumento(pedido.getDetalles());
+        if (instrumentoRepository.countByIdInstrumentoIn(cantidades.keySet()) != cantidades.size()) {
+            throw new IllegalArgumentException("El pedido incluye instrumentos inexistentes");
+        }
+    }
+
+    // Cantidades por instrumento (un mismo instrumento puede venir en varias líneas), en orden de id
+    private static SortedMap<Long, Integer> cantidadesPorInstrumento(List<DetallePedido> detalles) {
+        if (detalles == null || detalles.isEmpty()) {
+            throw new IllegalArgumentException("El pedido debe tener al menos un detalle");
+        }
+        SortedMap<Long, Integer> cantidades = new TreeMap<>();
+        for (DetallePedido detalle : detalles) {
+            if (detalle.getInstrumento() == null || detalle.getInstrumento().getIdInstrumento() == null) {
+                throw new IllegalArgumentException("Cada detalle debe indicar el instrumento");
+            }
+            if (detalle.getCantidad() == null || detalle.getCantidad() <= 0) {
+                throw new IllegalArgumentException("Cantidad inválida para el instrumento " +
+                        detalle.getInstrumento().getIdInstrumento());
+            }
+            cantidades.merge(detalle.getInstrumento().getIdInstrumento(), detalle.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
     // Actualizar estado del pedido
     public Pedido actualizarEstadoPedido(Long pedidoId, String nuevoEstado) {
         log.info("Actualizando estado del pedido {} a {}", pedidoId, nuevoEstado);
 
-        Pedido pedido = pedidoRepository.findById(pedidoId)
+        // Con la fila bloqueada dos cambios simultáneos no pueden partir del mismo estado
+        // (por ejemplo, cancelar dos veces y devolver el stock dos veces)
+        Pedido pedido = pedidoRepository.findByIdParaActualizar(pedidoId)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
+        EstadosPedido.validarTransicion(pedido.getEstadoActual(), nuevoEstado);
 
-        // Crear nuevo registro de estado
+        // Crear nuevo registro de estado y actualizar el estado actual en la misma transacción
         EstadoPedido nuevoEstadoPedido = new EstadoPedido(nuevoEstado, pedido);
         estadoPedidoRepository.save(nuevoEstadoPedido);
+        pedido.setEstadoActual(nuevoEstado);
 
-        // Si el pedido se cancela, devolver el stock
-        if ("CANCELADO".equals(nuevoEstado)) {
-            for (DetallePedido detalle : pedido.getDetalles()) {
-                instrumentoService.reponerStock(
-                        detalle.getInstrumento().getIdInstrumento(),
-                        detalle.getCantidad()
-                );
-            }
+        // Si el pedido se cancela, devolver el stock y descontarlo de las ventas
+        if (EstadosPedido.CANCELADO.equals(nuevoEstado)) {
+            ventasDiarias.restar(pedido.getFecha(), pedido.getDetalles());
+            instrumentoService.reponerStock(cantidadesPorInstrumento(pedido.getDetalles()));
         }
 
         return pedido;
     }
 
+    // Cambia el estado de varios pedidos a la vez (PATCH /pedidos/estado). Los pedidos se bloquean y validan con
+    // una sola consulta; los que no existen o no pueden pasar al estado se informan y no impiden el cambio de los demás
+    public ResumenCambioEstadosDTO actualizarEstados(List<Long> ids, String nuevoEstado) {
+        if (nuevoEstado == null || nuevoEstado.isBlank()) {
+            throw new IllegalArgumentException("El estado no puede estar vacío");
+        }
+        String estado = validarEstado(nuevoEstado);
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("Indicar al menos un pedido");
+        }
+        Set<Long> solicitados = new LinkedHashSet<>(ids);
+        if (solicitados.contains(null)) {
+            throw new IllegalArgumentException("Los ids de pedido no pueden ser nulos");
+        }
+        if (solicitados.size() > MAXIMO_CAMBIO_ESTADOS) {
+            throw new IllegalArgumentException("Se pueden cambiar hasta " + MAXIMO_CAMBIO_ESTADOS + " pedidos por solicitud");
+        }
+
+        long inicio = System.nanoTime();
+        Map<Long, String> actuales = new HashMap<>();
+        namedJdbcTemplate.query("SELECT id_pedido, estado_actual FROM pedidos WHERE id_pedido IN (:ids) " +
+                        "ORDER BY id_pedido FOR UPDATE", Map.of("ids", solicitados),
+                rs -> {
+                    actuales.put(rs.getLong(1), rs.getString(2));
+                });
+
+        List<Long> validos = new ArrayList<>();
+        List<ResultadoCambioEstadoDTO> resultados = new ArrayList<>(solicitados.size());
+        for (Long id : solicitados) {
+            if (!actuales.containsKey(id)) {
+                resultados.add(new ResultadoCambioEstadoDTO(id, false, null, "Pedido no encontrado"));
+                continue;
+            }
+            String actual = actuales.get(id);
+            if (!EstadosPedido.puedeCambiar(actual, estado)) {
+                resultados.add(new ResultadoCambioEstadoDTO(id, false, actual,
+                        "No se puede pasar un pedido de " + actual + " a " + estado));
+                continue;
+            }
+            validos.add(id);
+            resultados.add(new ResultadoCambioEstadoDTO(id, true, actual, null));
+        }
+
+        Date fecha = cambiarEstadoBloqueados(validos, estado);
+        long duracionMs = (System.nanoTime() - inicio) / 1_000_000;
+        log.info("Cambio de estado a {}: {} de {} pedidos en {} ms", estado, validos.size(), solicitados.size(), duracionMs);
+        return new ResumenCambioEstadosDTO(estado, validos.size(), solicitados.size() - validos.size(), resultados,
+                fecha, duracionMs);
+    }
+
+    // Pasa al estado indicado pedidos ya bloqueados por el llamador y validados para esa transición.
+    // El historial se inserta en batch y el estado actual en un UPDATE. Al cancelar, las ventas se restan y el
+    // stock se devuelve sumado por instrumento, con una actualización por instrumento y no por detalle
+    public Date cambiarEstadoBloqueados(List<Long> ids, String estado) {
+        Date fecha = new Date();
+        if (ids.isEmpty()) {
+            return fecha;
+        }
+        Timestamp momento = new Timestamp(fecha.getTime());
+        jdbcTemplate.batchUpdate(INSERT_ESTADO, ids, LOTE_IN, (ps, id) -> {
+            ps.setString(1, estado);
+            ps.setTimestamp(2, momento);
+            ps.setLong(3, id);
+        });
+        pedidoRepository.actualizarEstadoActual(ids, estado);
+
+        if (EstadosPedido.CANCELADO.equals(estado)) {
+            ventasDiarias.restarPedidos(ids);
+            SortedMap<Long, Integer> cantidades = new TreeMap<>();
+            for (Object[] fila : detallePedidoRepository.sumarCantidadesPorInstrumento(ids)) {
+                cantidades.put((Long) fila[0], ((Number) fila[1]).intValue());
+            }
+            instrumentoService.reponerStock(cantidades);
+        }
+        return fecha;
+    }
+
     // Eliminar pedido (solo si está en estado PENDIENTE)
     public void deleteById(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
+        // Bloqueada como en actualizarEstadoPedido: una cancelación simultánea no puede devolver el stock otra vez
+        Pedido pedido = pedidoRepository.findByIdParaActualizar(id)
                 .orElseThrow(() -> new IllegalArgumentException("Pedido no encontrado"));
 
         // Verificar que el pedido esté en estado PENDIENTE
-        if (!"PENDIENTE".equals(pedido.getEstadoActual())) {
+        if (!EstadosPedido.PENDIENTE.equals(pedido.getEstadoActual())) {
             throw new IllegalArgumentException("Solo se pueden eliminar pedidos en estado PENDIENTE");
         }
 
-        // Devolver el stock
-        for (DetallePedido detalle : pedido.getDetalles()) {
-            instrumentoService.reponerStock(
-                    detalle.getInstrumento().getIdInstrumento(),
-                    detalle.getCantidad()
-            );
-        }
+        // Devolver el stock y descontarlo de las ventas
+        ventasDiarias.restar(pedido.getFecha(), pedido.getDetalles());
+        instrumentoService.reponerStock(cantidadesPorInstrumento(pedido.getDetalles()));
 
         pedidoRepository.deleteById(id);
     }
 
-    // Método auxiliar para enriquecer pedido con información de instrumentos
-    public Pedido enrichPedidoWithInstrumentos(Pedido pedido) {
-        // Con JPA y las relaciones bien configuradas, esto ya viene cargado
-        return pedido;
+    // Completa precio unitario, subtotal y total de los pedidos creados antes de guardarlos.
+    // Se usa el precio vigente a la fecha del pedido según el historial (o el actual si no hay historial)
+    public int completarPreciosPedidos() {
+        long[] ultimoId = {0L};
+        int completados = 0;
+        List<DetallePedido> lote;
+        do {
+            lote = detallePedidoRepository.findSinSubtotal(ultimoId[0], Limit.of(LOTE_STREAMING));
+            for (DetallePedido detalle : lote) {
+                Instrumento instrumento = detalle.getInstrumento();
+                Double precio = precioTimeline.precioAl(instrumento.getIdInstrumento(), detalle.getPedido().getFecha())
+                        .orElse(instrumento.getPrecioActual());
+                detalle.setPrecioUnitario(precio);
+                detalle.setSubtotal(precio != null ? precio * detalle.getCantidad() : 0.0);
+                ultimoId[0] = detalle.getIdDetallePedido();
+            }
+            completados += lote.size();
+            entityManager.flush();
+            entityManager.clear();
+        } while (lote.size() == LOTE_STREAMING);
+
+        int pedidos = pedidoRepository.completarTotales();
+        log.info("Precios completados en {} detalles y {} pedidos", completados, pedidos);
+        return pedidos;
     }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.PrecioHistoricoDTO;
+import com.example.instrumentos.repository.HistorialPrecioArchivadoRepository;
+import com.example.instrumentos.repository.HistorialPrecioRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Líneas de tiempo de precios por instrumento ("precio vigente al momento T").
+// Se cargan una vez desde historial_precio_instrumento y su archivo en arrays ordenados por fecha
+// y se consultan con búsqueda binaria, sin ir a la base. Cada precio nuevo se agrega después del commit.
+// Las líneas son inmutables: agregar un precio reemplaza la del instrumento (copy-on-write).
+@Service
+@Slf4j
+public class PrecioTimelineService {
+
+    private static final Comparator<PrecioHistoricoDTO> ORDEN = Comparator
+            .comparing(PrecioHistoricoDTO::getIdInstrumento)
+            .thenComparing(PrecioHistoricoDTO::getFecha)
+            .thenComparing(PrecioHistoricoDTO::getId);
+
+    private final HistorialPrecioRepository historialPrecioRepository;
+    private final HistorialPrecioArchivadoRepository archivadoRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // null hasta la primera consulta (o después de recargar)
+    private volatile Map<Long, Linea> lineas;
+
+    public PrecioTimelineService(HistorialPrecioRepository historialPrecioRepository,
+                                 HistorialPrecioArchivadoRepository archivadoRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.historialPrecioRepository = historialPrecioRepository;
+        this.archivadoRepository = archivadoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    // Precio vigente del instrumento en la fecha indicada (vacío si todavía no tenía precio)
+    public Optional<Double> precioAl(Long idInstrumento, Date fecha) {
+        Linea linea = obtenerLineas().get(idInstrumento);
+        return linea == null ? Optional.empty() : linea.precioAl(fecha.getTime());
+    }
+
+    // Agrega un registro del historial; si hay una transacción activa se aplica recién después del commit
+    public void registrar(PrecioHistoricoDTO precio) {
+        despuesDelCommit(() -> agregar(precio));
+    }
+
+    public void quitar(Long idInstrumento) {
+        despuesDelCommit(() -> {
+            Map<Long, Linea> actuales = lineas;
+            if (actuales != null) {
+                actuales.remove(idInstrumento);
+            }
+        });
+    }
+
+    // Descarta todo: la próxima consulta vuelve a cargar el historial (cambios masivos)
+    public void recargar() {
+        despuesDelCommit(() -> {
+            synchronized (this) {
+                lineas = null;
+            }
+        });
+    }
+
+    // Acepta fecha (yyyy-MM-dd), fecha y hora local o instante ISO-8601.
+    // Una fecha sola se toma como el final del día, o el comienzo si finDelDia es false
+    public static Date parsearFecha(String texto, boolean finDelDia) {
+        try {
+            if (texto.length() == 10) {
+                LocalDate dia = LocalDate.parse(texto);
+                if (!finDelDia) {
+                    return Date.from(dia.atStartOfDay(ZoneId.systemDefault()).toInstant());
+                }
+                return Date.from(dia.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().minusMillis(1));
+            }
+            if (texto.endsWith("Z") || texto.matches(".*[+-]\\d{2}:\\d{2}$")) {
+                return Date.from(OffsetDateTime.parse(texto).toInstant());
+            }
+            return Date.from(LocalDateTime.parse(texto).atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha inválida: " + texto);
+        }
+    }
+
+    private void despuesDelCommit(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+
+    // Sincronizado con la carga: un registro confirmado durante la carga no se pierde ni se duplica
+    private synchronized void agregar(PrecioHistoricoDTO precio) {
+        if (lineas == null) {
+            // La próxima carga ya lo va a leer de la base
+            return;
+        }
+        lineas.compute(precio.getIdInstrumento(), (id, linea) -> (linea == null ? Linea.VACIA : linea)
+                .con(precio.getId(), precio.getFecha().getTime(), precio.getPrecio()));
+    }
+
+    private Map<Long, Linea> obtenerLineas() {
+        Map<Long, Linea> actuales = lineas;
+        if (actuales != null) {
+            return actuales;
+        }
+        synchronized (this) {
+            if (lineas == null) {
+                lineas = cargar();
+            }
+            return lineas;
+        }
+    }
+
+    private Map<Long, Linea> cargar() {
+        long inicio = System.nanoTime();
+        Map<Long, Linea> cargadas = new ConcurrentHashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<PrecioHistoricoDTO> archivados = archivadoRepository.streamLineasDeTiempo();
+                 Stream<PrecioHistoricoDTO> historial = historialPrecioRepository.streamLineasDeTiempo()) {
+                // Ambos llegan ordenados por (instrumento, fecha, id): se combinan sin ordenar en memoria
+                Iterator<PrecioHistoricoDTO> it = combinar(archivados.iterator(), historial.iterator());
+                Long idActual = null;
+                List<PrecioHistoricoDTO> registros = new ArrayList<>();
+                while (it.hasNext()) {
+                    PrecioHistoricoDTO precio = it.next();
+                    if (!precio.getIdInstrumento().equals(idActual)) {
+                        if (idActual != null) {
+                            cargadas.put(idActual, Linea.desde(registros));
+                        }
+                        idActual = precio.getIdInstrumento();
+                        registros.clear();
+                    }
+                    registros.add(precio);
+                }
+                if (idActual != null) {
+                    cargadas.put(idActual, Linea.desde(registros));
+                }
+            }
+        });
+        log.info("Líneas de tiempo de precios cargadas: {} instrumentos en {} ms",
+                cargadas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        return cargadas;
+    }
+
+    // Merge de dos iteradores ya ordenados
+    private static Iterator<PrecioHistoricoDTO> combinar(Iterator<PrecioHistoricoDTO> a, Iterator<PrecioHistoricoDTO> b) {
+        return new Iterator<>() {
+            private PrecioHistoricoDTO siguienteA = a.hasNext() ? a.next() : null;
+            private PrecioHistoricoDTO siguienteB = b.hasNext() ? b.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return siguienteA != null || siguienteB != null;
+            }
+
+            @Override
+            public PrecioHistoricoDTO next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                PrecioHistoricoDTO actual;
+                if (siguienteB == null || (siguienteA != null && ORDEN.compare(siguienteA, siguienteB) <= 0)) {
+                    actual = siguienteA;
+                    siguienteA = a.hasNext() ? a.next() : null;
+                } else {
+                    actual = siguienteB;
+                    siguienteB = b.hasNext() ? b.next() : null;
+                }
+                return actual;
+            }
+        };
+    }
+
+    // Precios de un instrumento ordenados por (fecha, id)
+    private static final class Linea {
+        private static final Linea VACIA = new Linea(new long[0], new long[0], new double[0]);
+
+        private final long[] ids;
+        private final long[] fechas;
+        private final double[] precios;
+
+        private Linea(long[] ids, long[] fechas, double[] precios) {
+            this.ids = ids;
+            this.fechas = fechas;
+            this.precios = precios;
+        }
+
+        private static Linea desde(List<PrecioHistoricoDTO> registros) {
+            int n = registros.size();
+            long[] ids = new long[n];
+            long[] fechas = new long[n];
+            double[] precios = new double[n];
+            for (int i = 0; i < n; i++) {
+                PrecioHistoricoDTO registro = registros.get(i);
+                ids[i] = registro.getId();
+                fechas[i] = registro.getFecha().getTime();
+                precios[i] = registro.getPrecio();
+            }
+            return new Linea(ids, fechas, precios);
+        }
+
+        // Último precio con fecha <= momento (búsqueda binaria)
+        private Optional<Double> precioAl(long momento) {
+            int inicio = 0;
+            int fin = fechas.length;
+            while (inicio < fin) {
+                int medio = (inicio + fin) >>> 1;
+                if (fechas[medio] <= momento) {
+                    inicio = medio + 1;
+                } else {
+                    fin = medio;
+                }
+            }
+            return inicio == 0 ? Optional.empty() : Optional.of(precios[inicio - 1]);
+        }
+
+        // Copia con el registro insertado en orden; si ya estaba (lo leyó la carga) no cambia
+        private Linea con(long id, long fecha, double precio) {
+            int posicion = fechas.length;
+            while (posicion > 0 && (fechas[posicion - 1] > fecha
+                    || (fechas[posicion - 1] == fecha && ids[posicion - 1] >= id))) {
+                if (ids[posicion - 1] == id) {
+                    return this;
+                }
+                posicion--;
+            }
+            int n = fechas.length;
+            long[] nuevosIds = new long[n + 1];
+            long[] nuevasFechas = new long[n + 1];
+            double[] nuevosPrecios = new double[n + 1];
+            System.arraycopy(ids, 0, nuevosIds, 0, posicion);
+            System.arraycopy(fechas, 0, nuevasFechas, 0, posicion);
+            System.arraycopy(precios, 0, nuevosPrecios, 0, posicion);
+            nuevosIds[posicion] = id;
+            nuevasFechas[posicion] = fecha;
+            nuevosPrecios[posicion] = precio;
+            System.arraycopy(ids, posicion, nuevosIds, posicion + 1, n - posicion);
+            System.arraycopy(fechas, posicion, nuevasFechas, posicion + 1, n - posicion);
+            System.arraycopy(precios, posicion, nuevosPrecios, posicion + 1, n - posicion);
+            return new Linea(nuevosIds, nuevasFechas, nuevosPrecios);
+        }
+    }
+}
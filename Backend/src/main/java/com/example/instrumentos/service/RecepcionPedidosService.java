@@ -0,0 +1,266 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.RecepcionPedidosMetricasDTO;
+import com.example.instrumentos.dto.SolicitudPedidoDTO;
+import com.example.instrumentos.model.DetallePedido;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.model.Pedido;
+import com.example.instrumentos.model.Usuario;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Recepción asincrónica de pedidos para picos de demanda (POST /pedidos?async=true).
+// Los pedidos validados entran en una cola acotada y un único hilo los confirma por grupos: todos los que
+// llegaron mientras se confirmaba el grupo anterior van juntos en una transacción, así el fsync del commit
+// y los locks de stock se pagan una vez por grupo y no una vez por pedido.
+// Si un pedido del grupo falla (por ejemplo, sin stock) se revierte el grupo y se confirma pedido por pedido,
+// para que el rechazo de uno no arrastre a los demás.
+@Service
+@Slf4j
+public class RecepcionPedidosService {
+
+    public static final String EN_COLA = "EN_COLA";
+    public static final String CONFIRMADO = "CONFIRMADO";
+    public static final String RECHAZADO = "RECHAZADO";
+
+    private final PedidoService pedidoService;
+    private final TransactionTemplate transactionTemplate;
+    private final int capacidad;
+    private final int tamanioLote;
+    private final long retencionMs;
+
+    private final BlockingQueue<Solicitud> cola;
+    // Solicitudes en cola o procesadas hace menos de la retención
+    private final ConcurrentHashMap<String, Seguimiento> seguimientos = new ConcurrentHashMap<>();
+
+    private final Thread confirmador;
+    private volatile boolean activo = true;
+
+    private final LongAdder recibidos = new LongAdder();
+    private final LongAdder confirmados = new LongAdder();
+    private final LongAdder rechazados = new LongAdder();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong pedidosEnLotes = new AtomicLong();
+    private final AtomicLong commitTotalMs = new AtomicLong();
+    private final AtomicLong maximoCommitMs = new AtomicLong();
+    private volatile int ultimoLote;
+    private volatile long ultimoCommitMs;
+
+    public RecepcionPedidosService(PedidoService pedidoService,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${instrumentos.pedidos.asincronos.capacidad:10000}") int capacidad,
+                                   @Value("${instrumentos.pedidos.asincronos.lote:100}") int tamanioLote,
+                                   @Value("${instrumentos.pedidos.asincronos.retencion-minutos:60}") int retencionMinutos) {
+        this.pedidoService = pedidoService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.capacidad = capacidad;
+        this.tamanioLote = tamanioLote;
+        this.retencionMs = TimeUnit.MINUTES.toMillis(retencionMinutos);
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.confirmador = new Thread(this::confirmarEnGrupos, "confirmador-pedidos");
+        this.confirmador.setDaemon(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        confirmador.start();
+    }
+
+    // Valida el pedido y lo deja en cola. ColaLlenaException si no hay lugar
+    public SolicitudPedidoDTO encolar(Pedido pedido) {
+        pedidoService.validarSolicitud(pedido);
+        if (pedido.getFecha() == null) {
+            pedido.setFecha(new Date());
+        }
+        Seguimiento seguimiento = new Seguimiento(UUID.randomUUID().toString(), new Date());
+        seguimientos.put(seguimiento.id, seguimiento);
+        if (!cola.offer(new Solicitud(seguimiento, copiar(pedido)))) {
+            seguimientos.remove(seguimiento.id);
+            throw new ColaLlenaException();
+        }
+        recibidos.increment();
+        return seguimiento.estado;
+    }
+
+    // Se completa cuando la solicitud se confirma o se rechaza, o con el estado actual pasada la espera
+    public Optional<CompletableFuture<SolicitudPedidoDTO>> esperarSolicitud(String id, long esperaMs) {
+        Seguimiento seguimiento = seguimientos.get(id);
+        if (seguimiento == null) {
+            return Optional.empty();
+        }
+        if (esperaMs <= 0 || seguimiento.resultado.isDone()) {
+            return Optional.of(CompletableFuture.completedFuture(seguimiento.estado));
+        }
+        return Optional.of(seguimiento.resultado.thenApply(estado -> estado)
+                .completeOnTimeout(seguimiento.estado, esperaMs, TimeUnit.MILLISECONDS));
+    }
+
+    public RecepcionPedidosMetricasDTO getMetricas() {
+        long cantidadLotes = lotes.get();
+        return new RecepcionPedidosMetricasDTO(
+                cola.size(),
+                capacidad,
+                recibidos.sum(),
+                confirmados.sum(),
+                rechazados.sum(),
+                cantidadLotes,
+                ultimoLote,
+                cantidadLotes == 0 ? 0 : (double) pedidosEnLotes.get() / cantidadLotes,
+                ultimoCommitMs,
+                cantidadLotes == 0 ? 0 : (double) commitTotalMs.get() / cantidadLotes,
+                maximoCommitMs.get()
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${instrumentos.pedidos.asincronos.limpieza-ms:60000}")
+    public void limpiarProcesadas() {
+        long limite = System.currentTimeMillis() - retencionMs;
+        seguimientos.values().removeIf(seguimiento -> seguimiento.estado.getProcesado() != null
+                && seguimiento.estado.getProcesado().getTime() < limite);
+    }
+
+    // Al detenerse se confirma lo que quedó en cola antes de cerrar la conexión a la base
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        activo = false;
+        if (confirmador.isAlive()) {
+            confirmador.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    private void confirmarEnGrupos() {
+        while (activo || !cola.isEmpty()) {
+            try {
+                Solicitud primera = cola.poll(200, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                List<Solicitud> grupo = new ArrayList<>(tamanioLote);
+                grupo.add(primera);
+                cola.drainTo(grupo, tamanioLote - 1);
+                confirmar(grupo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Error en el confirmador de pedidos: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void confirmar(List<Solicitud> grupo) {
+        long inicio = System.nanoTime();
+        List<Long> ids;
+        try {
+            // Cada intento trabaja sobre una copia: save modifica el pedido y un intento revertido no debe dejar rastros
+            ids = transactionTemplate.execute(status -> {
+                List<Long> guardados = new ArrayList<>(grupo.size());
+                grupo.forEach(solicitud -> guardados.add(pedidoService.save(copiar(solicitud.pedido)).getIdPedido()));
+                return guardados;
+            });
+        } catch (RuntimeException e) {
+            if (grupo.size() == 1) {
+                rechazar(grupo.get(0), e);
+            } else {
+                log.info("Grupo de {} pedidos revertido ({}): se confirman de a uno", grupo.size(), e.getMessage());
+                grupo.forEach(solicitud -> confirmar(List.of(solicitud)));
+            }
+            return;
+        }
+        registrarLote(grupo.size(), (System.nanoTime() - inicio) / 1_000_000);
+        Date ahora = new Date();
+        for (int i = 0; i < grupo.size(); i++) {
+            Seguimiento seguimiento = grupo.get(i).seguimiento;
+            seguimiento.terminar(new SolicitudPedidoDTO(seguimiento.id, CONFIRMADO, ids.get(i), null,
+                    seguimiento.estado.getRecibido(), ahora));
+        }
+        confirmados.add(grupo.size());
+    }
+
+    private void rechazar(Solicitud solicitud, RuntimeException e) {
+        String error;
+        if (e instanceof IllegalArgumentException) {
+            error = e.getMessage();
+        } else {
+            log.error("Error al confirmar pedido {}: {}", solicitud.seguimiento.id, e.getMessage(), e);
+            error = "Error interno al procesar el pedido";
+        }
+        Seguimiento seguimiento = solicitud.seguimiento;
+        seguimiento.terminar(new SolicitudPedidoDTO(seguimiento.id, RECHAZADO, null, error,
+                seguimiento.estado.getRecibido(), new Date()));
+        rechazados.increment();
+    }
+
+    private void registrarLote(int cantidad, long duracionMs) {
+        lotes.incrementAndGet();
+        pedidosEnLotes.addAndGet(cantidad);
+        commitTotalMs.addAndGet(duracionMs);
+        maximoCommitMs.accumulateAndGet(duracionMs, Math::max);
+        ultimoLote = cantidad;
+        ultimoCommitMs = duracionMs;
+    }
+
+    // Sólo lo que save necesita: usuario, fecha y cantidades por instrumento
+    private static Pedido copiar(Pedido original) {
+        Pedido copia = new Pedido();
+        Usuario usuario = new Usuario();
+        usuario.setIdUsuario(original.getUsuario().getIdUsuario());
+        copia.setUsuario(usuario);
+        copia.setFecha(original.getFecha());
+        List<DetallePedido> detalles = new ArrayList<>(original.getDetalles().size());
+        for (DetallePedido detalle : original.getDetalles()) {
+            Instrumento instrumento = new Instrumento();
+            instrumento.setIdInstrumento(detalle.getInstrumento().getIdInstrumento());
+            DetallePedido nuevo = new DetallePedido();
+            nuevo.setInstrumento(instrumento);
+            nuevo.setCantidad(detalle.getCantidad());
+            detalles.add(nuevo);
+        }
+        copia.setDetalles(detalles);
+        return copia;
+    }
+
+    public static class ColaLlenaException extends IllegalStateException {
+        public ColaLlenaException() {
+            super("La cola de pedidos está llena, reintentar más tarde");
+        }
+    }
+
+    private static final class Solicitud {
+        private final Seguimiento seguimiento;
+        private final Pedido pedido;
+
+        private Solicitud(Seguimiento seguimiento, Pedido pedido) {
+            this.seguimiento = seguimiento;
+            this.pedido = pedido;
+        }
+    }
+
+    private static final class Seguimiento {
+        private final String id;
+        private final CompletableFuture<SolicitudPedidoDTO> resultado = new CompletableFuture<>();
+        private volatile SolicitudPedidoDTO estado;
+
+        private Seguimiento(String id, Date recibido) {
+            this.id = id;
+            this.estado = new SolicitudPedidoDTO(id, EN_COLA, null, null, recibido, null);
+        }
+
+        private void terminar(SolicitudPedidoDTO resuelto) {
+            estado = resuelto;
+            resultado.complete(resuelto);
+        }
+    }
+}
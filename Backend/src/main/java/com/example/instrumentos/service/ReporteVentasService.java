@@ -0,0 +1,215 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.ReporteVentasDTO;
+import com.example.instrumentos.dto.VentaDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+// Reporte de ventas (ingresos, unidades y pedidos) por período, categoría e instrumento.
+// Se lee de ventas_diarias (ver VentasDiariasService), que ya tiene las ventas agrupadas por día e instrumento:
+// el costo depende de los días del rango y no de la cantidad de pedidos. Los rangos se toman por días completos.
+// Los rangos largos se parten en tramos de días que se consultan en paralelo en un pool acotado y después se
+// combinan. Los pedidos cancelados ya están restados de ventas_diarias.
+@Service
+@Slf4j
+public class ReporteVentasService {
+
+    public static final String DIA = "dia";
+    public static final String SEMANA = "semana";
+    public static final String MES = "mes";
+
+    private static final int DIAS_POR_DEFECTO = 30;
+
+    private static final String FILTRO = "WHERE v.dia >= :desde AND v.dia <= :hasta ";
+    private static final String CON_VENTAS = "HAVING SUM(v.unidades) <> 0";
+
+    // Pedidos por día: cada pedido cuenta una vez, en la fila de su primer instrumento (ver VentaDiaria)
+    private static final String POR_DIA = "SELECT v.dia, SUM(v.ingresos), SUM(v.unidades), SUM(v.primeros_del_pedido) " +
+            "FROM ventas_diarias v " + FILTRO + "GROUP BY v.dia " + CON_VENTAS;
+    private static final String POR_INSTRUMENTO = "SELECT i.id_instrumento, i.denominacion, " +
+            "SUM(v.ingresos), SUM(v.unidades), SUM(v.pedidos) " +
+            "FROM ventas_diarias v JOIN instrumentos i ON i.id_instrumento = v.id_instrumento " + FILTRO +
+            "GROUP BY i.id_instrumento, i.denominacion " + CON_VENTAS;
+    private static final String POR_CATEGORIA = "SELECT c.id_categoria_instrumento, c.denominacion, " +
+            "SUM(v.ingresos), SUM(v.unidades), SUM(v.primeros_de_categoria) " +
+            "FROM ventas_diarias v JOIN instrumentos i ON i.id_instrumento = v.id_instrumento " +
+            "JOIN categorias_instrumento c ON c.id_categoria_instrumento = i.id_categoria_instrumento " + FILTRO +
+            "GROUP BY c.id_categoria_instrumento, c.denominacion " + CON_VENTAS;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int diasPorTramo;
+    private final int maximoDias;
+    private final ExecutorService consultas;
+
+    public ReporteVentasService(NamedParameterJdbcTemplate jdbcTemplate,
+                                @Value("${instrumentos.reportes.dias-por-tramo:31}") int diasPorTramo,
+                                @Value("${instrumentos.reportes.hilos:4}") int hilos,
+                                @Value("${instrumentos.reportes.maximo-dias:1096}") int maximoDias) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.diasPorTramo = diasPorTramo;
+        this.maximoDias = maximoDias;
+        // Cola acotada: si se llena, el hilo del pedido HTTP consulta el tramo él mismo
+        this.consultas = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(hilos * 8),
+                r -> {
+                    Thread hilo = new Thread(r, "reporte-ventas");
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Sin hasta se toma ahora; sin desde, los últimos DIAS_POR_DEFECTO días
+    public ReporteVentasDTO ventas(Date desde, Date hasta, String agrupacion) {
+        String agrupar = agrupacion == null ? DIA : agrupacion.trim().toLowerCase();
+        Function<LocalDate, String> periodo = periodo(agrupar);
+        Date fin = hasta != null ? hasta : new Date();
+        Date inicio = desde != null ? desde : new Date(fin.getTime() - TimeUnit.DAYS.toMillis(DIAS_POR_DEFECTO));
+        if (inicio.after(fin)) {
+            throw new IllegalArgumentException("La fecha desde no puede ser posterior a hasta");
+        }
+
+        long comienzo = System.nanoTime();
+        LocalDate primerDia = dia(inicio);
+        LocalDate ultimoDia = dia(fin);
+        // Cada tramo es una consulta: un rango sin tope ocuparía el pool con cientos de consultas
+        if (ChronoUnit.DAYS.between(primerDia, ultimoDia) >= maximoDias) {
+            throw new IllegalArgumentException("El rango del reporte no puede superar " + maximoDias + " días");
+        }
+        List<CompletableFuture<Tramo>> tramos = new ArrayList<>();
+        for (LocalDate desdeDia = primerDia; !desdeDia.isAfter(ultimoDia); desdeDia = desdeDia.plusDays(diasPorTramo)) {
+            LocalDate a = desdeDia;
+            LocalDate finTramo = desdeDia.plusDays(diasPorTramo - 1);
+            LocalDate b = finTramo.isAfter(ultimoDia) ? ultimoDia : finTramo;
+            tramos.add(CompletableFuture.supplyAsync(() -> consultar(a, b), consultas));
+        }
+
+        Map<LocalDate, Acumulado> porDia = new HashMap<>();
+        Map<Long, Acumulado> porCategoria = new HashMap<>();
+        Map<Long, Acumulado> porInstrumento = new HashMap<>();
+        try {
+            for (CompletableFuture<Tramo> futuro : tramos) {
+                Tramo tramo = futuro.join();
+                tramo.porDia.forEach((dia, venta) -> porDia.merge(dia, venta, Acumulado::sumar));
+                tramo.porCategoria.forEach((id, venta) -> porCategoria.merge(id, venta, Acumulado::sumar));
+                tramo.porInstrumento.forEach((id, venta) -> porInstrumento.merge(id, venta, Acumulado::sumar));
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+
+        // Los días se agrupan en semanas o meses acá: son pocas filas y la expresión no depende del motor SQL
+        Map<String, Acumulado> porPeriodo = new TreeMap<>();
+        porDia.forEach((dia, venta) -> porPeriodo.merge(periodo.apply(dia), venta.copia(), Acumulado::sumar));
+        Acumulado totales = new Acumulado(null, null);
+        porDia.values().forEach(totales::sumar);
+
+        List<VentaDTO> periodos = new ArrayList<>(porPeriodo.size());
+        porPeriodo.forEach((clave, venta) -> periodos.add(venta.aDTO(clave)));
+        long duracionMs = (System.nanoTime() - comienzo) / 1_000_000;
+        log.info("Reporte de ventas {} - {} por {}: {} tramos en {} ms", primerDia, ultimoDia, agrupar, tramos.size(), duracionMs);
+        return new ReporteVentasDTO(inicio, fin, agrupar, totales.aDTO(null), periodos,
+                ordenarPorIngresos(porCategoria.values()), ordenarPorIngresos(porInstrumento.values()),
+                tramos.size(), duracionMs);
+    }
+
+    @PreDestroy
+    public void detener() {
+        consultas.shutdownNow();
+    }
+
+    private Tramo consultar(LocalDate desde, LocalDate hasta) {
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("desde", java.sql.Date.valueOf(desde))
+                .addValue("hasta", java.sql.Date.valueOf(hasta));
+        Tramo tramo = new Tramo();
+        jdbcTemplate.query(POR_DIA, parametros, rs -> {
+            tramo.porDia.put(rs.getDate(1).toLocalDate(),
+                    new Acumulado(null, null, rs.getDouble(2), rs.getLong(3), rs.getLong(4)));
+        });
+        jdbcTemplate.query(POR_CATEGORIA, parametros, rs -> {
+            tramo.porCategoria.put(rs.getLong(1),
+                    new Acumulado(rs.getLong(1), rs.getString(2), rs.getDouble(3), rs.getLong(4), rs.getLong(5)));
+        });
+        jdbcTemplate.query(POR_INSTRUMENTO, parametros, rs -> {
+            tramo.porInstrumento.put(rs.getLong(1),
+                    new Acumulado(rs.getLong(1), rs.getString(2), rs.getDouble(3), rs.getLong(4), rs.getLong(5)));
+        });
+        return tramo;
+    }
+
+    private static LocalDate dia(Date fecha) {
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    // Clave del período de un día: el mismo día, el lunes de su semana o el mes
+    private static Function<LocalDate, String> periodo(String agrupacion) {
+        return switch (agrupacion) {
+            case DIA -> LocalDate::toString;
+            case SEMANA -> dia -> dia.with(DayOfWeek.MONDAY).toString();
+            case MES -> dia -> YearMonth.from(dia).toString();
+            default -> throw new IllegalArgumentException("Agrupación inválida: " + agrupacion +
+                    ". Valores posibles: " + DIA + ", " + SEMANA + ", " + MES);
+        };
+    }
+
+    private static List<VentaDTO> ordenarPorIngresos(Collection<Acumulado> ventas) {
+        return ventas.stream()
+                .sorted(Comparator.comparingDouble((Acumulado venta) -> venta.ingresos).reversed())
+                .map(venta -> venta.aDTO(null))
+                .toList();
+    }
+
+    private static final class Tramo {
+        private final Map<LocalDate, Acumulado> porDia = new HashMap<>();
+        private final Map<Long, Acumulado> porCategoria = new HashMap<>();
+        private final Map<Long, Acumulado> porInstrumento = new HashMap<>();
+    }
+
+    private static final class Acumulado {
+        private final Long id;
+        private final String nombre;
+        private double ingresos;
+        private long unidades;
+        private long pedidos;
+
+        private Acumulado(Long id, String nombre) {
+            this.id = id;
+            this.nombre = nombre;
+        }
+
+        private Acumulado(Long id, String nombre, double ingresos, long unidades, long pedidos) {
+            this(id, nombre);
+            this.ingresos = ingresos;
+            this.unidades = unidades;
+            this.pedidos = pedidos;
+        }
+
+        private Acumulado sumar(Acumulado otro) {
+            ingresos += otro.ingresos;
+            unidades += otro.unidades;
+            pedidos += otro.pedidos;
+            return this;
+        }
+
+        private Acumulado copia() {
+            return new Acumulado(id, nombre, ingresos, unidades, pedidos);
+        }
+
+        private VentaDTO aDTO(String clave) {
+            return new VentaDTO(clave, id, nombre, Math.round(ingresos * 100) / 100.0, unidades, pedidos);
+        }
+    }
+}
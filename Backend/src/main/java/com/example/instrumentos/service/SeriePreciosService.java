@@ -0,0 +1,167 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.PuntoPrecioDTO;
+import com.example.instrumentos.dto.SeriePreciosDTO;
+import com.example.instrumentos.repository.HistorialPrecioArchivadoRepository;
+import com.example.instrumentos.repository.HistorialPrecioRepository;
+import com.example.instrumentos.repository.InstrumentoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+// Series de precios para gráficos, reducidas a una cantidad acotada de puntos con M4:
+// el rango se divide en intervalos de tiempo iguales y de cada uno se conservan el primer,
+// el último, el mínimo y el máximo precio, que es lo que define el trazo de la línea.
+// Los registros se recorren en streaming (archivo e historial), sin cargar la serie completa.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class SeriePreciosService {
+
+    public static final int PUNTOS_POR_DEFECTO = 200;
+    public static final int PUNTOS_MAXIMO = 2000;
+    // Un intervalo M4 (4 puntos) más el precio vigente al inicio del rango
+    public static final int PUNTOS_MINIMO = 5;
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final HistorialPrecioRepository historialPrecioRepository;
+    private final HistorialPrecioArchivadoRepository archivadoRepository;
+    private final PrecioTimelineService precioTimeline;
+
+    // Vacío si el instrumento no existe. Sin desde se toma el primer precio registrado; sin hasta, ahora
+    public Optional<SeriePreciosDTO> findSerie(Long idInstrumento, Date desde, Date hasta, Integer puntos) {
+        int maximo = normalizarPuntos(puntos);
+        if (!instrumentoRepository.existsById(idInstrumento)) {
+            return Optional.empty();
+        }
+        Date fin = hasta != null ? hasta : new Date();
+        Date inicio = desde != null ? desde : primeraFecha(idInstrumento).orElse(fin);
+        if (inicio.after(fin)) {
+            throw new IllegalArgumentException("La fecha desde no puede ser posterior a hasta");
+        }
+
+        Reductor reductor = new Reductor(maximo, inicio.getTime(), fin.getTime());
+        // Precio vigente al comenzar el rango, para que la línea no arranque vacía
+        precioTimeline.precioAl(idInstrumento, new Date(inicio.getTime() - 1))
+                .ifPresent(precio -> reductor.agregar(new PuntoPrecioDTO(inicio, precio)));
+
+        // El archivo sólo guarda precios reemplazados por uno posterior del historial:
+        // leer primero el archivo y después el historial ya respeta el orden por fecha
+        try (Stream<PuntoPrecioDTO> archivados = archivadoRepository.streamSerie(idInstrumento, inicio, fin);
+             Stream<PuntoPrecioDTO> historial = historialPrecioRepository.streamSerie(idInstrumento, inicio, fin)) {
+            archivados.forEach(reductor::agregar);
+            historial.forEach(reductor::agregar);
+        }
+        return Optional.of(new SeriePreciosDTO(idInstrumento, inicio, fin, reductor.getLeidos(), reductor.terminar()));
+    }
+
+    private Optional<Date> primeraFecha(Long idInstrumento) {
+        Optional<Date> archivada = archivadoRepository.findPrimeraFecha(idInstrumento);
+        return archivada.isPresent() ? archivada : historialPrecioRepository.findPrimeraFecha(idInstrumento);
+    }
+
+    private static int normalizarPuntos(Integer puntos) {
+        if (puntos == null) {
+            return PUNTOS_POR_DEFECTO;
+        }
+        if (puntos < PUNTOS_MINIMO) {
+            throw new IllegalArgumentException("points debe ser al menos " + PUNTOS_MINIMO);
+        }
+        return Math.min(puntos, PUNTOS_MAXIMO);
+    }
+
+    // Reduce una secuencia ordenada por fecha a lo sumo a "maximo" puntos con memoria acotada.
+    // Mientras la serie entra completa se guardan los puntos tal cual; si se pasa, se aplica M4
+    static final class Reductor {
+        private final int maximo;
+        private final int intervalos;
+        private final long desde;
+        private final long duracion;
+
+        private List<PuntoPrecioDTO> crudos = new ArrayList<>();
+        private final List<PuntoPrecioDTO> salida = new ArrayList<>();
+        private long leidos;
+
+        // Intervalo en curso: posición de lectura de cada candidato para emitirlos en orden
+        private int intervalo = -1;
+        private PuntoPrecioDTO primero, ultimo, minimo, maximoPrecio;
+        private long posPrimero, posUltimo, posMinimo, posMaximo;
+
+        Reductor(int maximo, long desde, long hasta) {
+            this.maximo = maximo;
+            // Reserva un punto para el precio vigente al inicio, que cae en el primer intervalo
+            this.intervalos = Math.max(1, (maximo - 1) / 4);
+            this.desde = desde;
+            this.duracion = hasta - desde + 1;
+        }
+
+        long getLeidos() {
+            return leidos;
+        }
+
+        void agregar(PuntoPrecioDTO punto) {
+            long posicion = leidos++;
+            if (crudos != null) {
+                crudos.add(punto);
+                if (crudos.size() <= maximo) {
+                    return;
+                }
+                // No entra completa: se vuelcan los guardados al M4 y se sigue en streaming
+                List<PuntoPrecioDTO> pendientes = crudos;
+                crudos = null;
+                for (int i = 0; i < pendientes.size(); i++) {
+                    acumular(pendientes.get(i), i);
+                }
+                return;
+            }
+            acumular(punto, posicion);
+        }
+
+        private void acumular(PuntoPrecioDTO punto, long posicion) {
+            int actual = (int) ((punto.getFecha().getTime() - desde) * intervalos / duracion);
+            if (actual != intervalo) {
+                volcar();
+                intervalo = actual;
+                primero = minimo = maximoPrecio = punto;
+                posPrimero = posMinimo = posMaximo = posicion;
+            }
+            ultimo = punto;
+            posUltimo = posicion;
+            if (punto.getPrecio() < minimo.getPrecio()) {
+                minimo = punto;
+                posMinimo = posicion;
+            }
+            if (punto.getPrecio() > maximoPrecio.getPrecio()) {
+                maximoPrecio = punto;
+                posMaximo = posicion;
+            }
+        }
+
+        // Emite los candidatos del intervalo en orden de lectura, sin repetir
+        private void volcar() {
+            if (intervalo < 0) {
+                return;
+            }
+            TreeMap<Long, PuntoPrecioDTO> candidatos = new TreeMap<>();
+            candidatos.put(posPrimero, primero);
+            candidatos.put(posMinimo, minimo);
+            candidatos.put(posMaximo, maximoPrecio);
+            candidatos.put(posUltimo, ultimo);
+            salida.addAll(candidatos.values());
+        }
+
+        List<PuntoPrecioDTO> terminar() {
+            if (crudos != null) {
+                return crudos;
+            }
+            volcar();
+            intervalo = -1;
+            return salida;
+        }
+    }
+}
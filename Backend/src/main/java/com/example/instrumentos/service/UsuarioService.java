@@ -2,13 +2,16 @@ package com.example.instrumentos.service;
 
 import com.example.instrumentos.dto.LoginRequest;
 import com.example.instrumentos.dto.LoginResponse;
+import com.example.instrumentos.dto.PaginaDTO;
 import com.example.instrumentos.dto.RegistroRequest;
 import com.example.instrumentos.model.Rol;
 import com.example.instrumentos.model.Usuario;
 import com.example.instrumentos.repository.RolRepository;
 import com.example.instrumentos.repository.UsuarioRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,6 +20,8 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -24,8 +29,12 @@ import java.util.Optional;
 @Transactional
 public class UsuarioService {
 
+    // Cada cuántas filas se vacía el contexto de persistencia al recorrer con cursor
+    private static final int LOTE_STREAMING = 500;
+
     private final UsuarioRepository usuarioRepository;
     private final RolRepository rolRepository;
+    private final EntityManager entityManager;
 
     // Autenticar usuario
     public LoginResponse autenticarUsuario(LoginRequest loginRequest) {
@@ -119,6 +128,30 @@ public class UsuarioService {
         return usuarioRepository.findAll();
     }
 
+    // Recorre todos los usuarios por id con un cursor de la base, sin acumularlos en memoria
+    @Transactional(readOnly = true)
+    public void forEachUsuario(Consumer<Usuario> accion) {
+        try (Stream<Usuario> usuarios = usuarioRepository.streamAll()) {
+            int[] leidos = {0};
+            usuarios.forEach(usuario -> {
+                accion.accept(usuario);
+                if (++leidos[0] % LOTE_STREAMING == 0) {
+                    entityManager.clear();
+                }
+            });
+        }
+    }
+
+    // Página de usuarios ordenada por id (cursor keyset)
+    public PaginaDTO<Usuario> findPagina(String cursor, Integer size) {
+        int tamanio = Paginacion.normalizarTamanio(size);
+        Long desde = Paginacion.leerCursorId(cursor);
+        List<Usuario> filas = (desde == null)
+                ? usuarioRepository.findAllByOrderByIdUsuario(Limit.of(tamanio + 1))
+                : usuarioRepository.findByIdUsuarioGreaterThanOrderByIdUsuario(desde, Limit.of(tamanio + 1));
+        return Paginacion.pagina(filas, tamanio, u -> Paginacion.cursorId(u.getIdUsuario()));
+    }
+
     // Buscar usuario por ID
     public Optional<Usuario> findById(Long id) {
         return usuarioRepository.findById(id);
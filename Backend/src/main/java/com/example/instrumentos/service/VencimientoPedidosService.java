@@ -0,0 +1,114 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.model.Pedido;
+import com.example.instrumentos.repository.PedidoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Vencimiento de pedidos abandonados: los PENDIENTE más viejos que la antigüedad configurada pasan a
+// CANCELADO y devuelven su stock. Se buscan con el índice (estado_actual, fecha, id_pedido) y se cancelan por
+// lotes, cada uno en su propia transacción (ver PedidoService.cambiarEstadoBloqueados).
+// Para no competir con los pedidos en curso, los lotes son chicos, hay una pausa entre lotes y un tope de
+// pedidos por ejecución: lo que quede se vence en la ejecución siguiente.
+@Service
+@Slf4j
+public class VencimientoPedidosService {
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoService pedidoService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+    private final long antiguedadMs;
+    private final int lote;
+    private final long pausaMs;
+    private final int maximoPorEjecucion;
+
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+
+    public VencimientoPedidosService(PedidoRepository pedidoRepository,
+                                     PedidoService pedidoService,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${instrumentos.pedidos.vencimiento.habilitado:true}") boolean habilitado,
+                                     @Value("${instrumentos.pedidos.vencimiento.antiguedad-minutos:2880}") int antiguedadMinutos,
+                                     @Value("${instrumentos.pedidos.vencimiento.lote:100}") int lote,
+                                     @Value("${instrumentos.pedidos.vencimiento.pausa-ms:200}") long pausaMs,
+                                     @Value("${instrumentos.pedidos.vencimiento.maximo-por-ejecucion:5000}") int maximoPorEjecucion) {
+        if (antiguedadMinutos < 1 || lote < 1 || pausaMs < 0 || maximoPorEjecucion < 1) {
+            throw new IllegalArgumentException("Configuración de vencimiento de pedidos inválida");
+        }
+        this.pedidoRepository = pedidoRepository;
+        this.pedidoService = pedidoService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.habilitado = habilitado;
+        this.antiguedadMs = TimeUnit.MINUTES.toMillis(antiguedadMinutos);
+        this.lote = lote;
+        this.pausaMs = pausaMs;
+        this.maximoPorEjecucion = maximoPorEjecucion;
+    }
+
+    @Scheduled(fixedDelayString = "${instrumentos.pedidos.vencimiento.intervalo-ms:300000}",
+            initialDelayString = "${instrumentos.pedidos.vencimiento.intervalo-ms:300000}")
+    public void vencerProgramado() {
+        if (habilitado) {
+            vencer();
+        }
+    }
+
+    // Devuelve la cantidad de pedidos cancelados (0 si ya hay un vencimiento en curso)
+    public int vencer() {
+        if (!enCurso.compareAndSet(false, true)) {
+            log.info("Vencimiento de pedidos ya en curso");
+            return 0;
+        }
+        try {
+            long inicio = System.nanoTime();
+            Date corte = new Date(System.currentTimeMillis() - antiguedadMs);
+            int total = 0;
+            boolean quedan;
+            do {
+                int tamanio = Math.min(lote, maximoPorEjecucion - total);
+                int cancelados = transactionTemplate.execute(status -> {
+                    List<Long> ids = pedidoRepository
+                            .findAnterioresParaActualizar(EstadosPedido.PENDIENTE, corte, Limit.of(tamanio))
+                            .stream().map(Pedido::getIdPedido).toList();
+                    pedidoService.cambiarEstadoBloqueados(ids, EstadosPedido.CANCELADO);
+                    return ids.size();
+                });
+                total += cancelados;
+                quedan = cancelados == tamanio && total < maximoPorEjecucion;
+            } while (quedan && pausar());
+
+            if (total > 0) {
+                log.info("Pedidos pendientes vencidos: {} anteriores a {} en {} ms",
+                        total, corte, (System.nanoTime() - inicio) / 1_000_000);
+            }
+            return total;
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    // Entre lotes, fuera de toda transacción; false si se interrumpió (la aplicación se está deteniendo)
+    private boolean pausar() {
+        if (pausaMs == 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pausaMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
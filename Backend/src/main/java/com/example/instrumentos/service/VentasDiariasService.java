@@ -0,0 +1,274 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.model.DetallePedido;
+import com.example.instrumentos.model.Instrumento;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Mantiene ventas_diarias (ver VentaDiaria): suma cada pedido al confirmarse y lo resta al cancelarse o
+// eliminarse, dentro de la transacción del pedido. Las filas se actualizan en orden de instrumento, el mismo
+// orden en que se descuenta el stock, para no agregar esperas cruzadas entre pedidos.
+@Service
+@Slf4j
+@Transactional
+public class VentasDiariasService {
+
+    // Días reconstruidos por vez: acota las filas acumuladas en memoria
+    private static final int DIAS_POR_RECONSTRUCCION = 31;
+    private static final int LOTE = 1000;
+
+    private static final String INSERTAR = "INSERT INTO ventas_diarias (dia, id_instrumento, ingresos, unidades, " +
+            "pedidos, primeros_del_pedido, primeros_de_categoria) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    // Crea la fila con la primera venta del día o suma sobre la existente (uk_ventas_diarias_dia_instrumento)
+    private static final String ACUMULAR = INSERTAR + " ON DUPLICATE KEY UPDATE " +
+            "ingresos = ingresos + VALUES(ingresos), unidades = unidades + VALUES(unidades), " +
+            "pedidos = pedidos + VALUES(pedidos), primeros_del_pedido = primeros_del_pedido + VALUES(primeros_del_pedido), " +
+            "primeros_de_categoria = primeros_de_categoria + VALUES(primeros_de_categoria)";
+    private static final String DESCONTAR = "UPDATE ventas_diarias SET ingresos = ingresos - ?, unidades = unidades - ?, " +
+            "pedidos = pedidos - ?, primeros_del_pedido = primeros_del_pedido - ?, " +
+            "primeros_de_categoria = primeros_de_categoria - ? WHERE dia = ? AND id_instrumento = ?";
+    private static final String SELECT_LINEAS = "SELECT p.id_pedido, p.fecha, d.id_instrumento, " +
+            "i.id_categoria_instrumento, d.cantidad, d.subtotal FROM pedidos p " +
+            "JOIN detalle_pedido d ON d.id_pedido = p.id_pedido JOIN instrumentos i ON i.id_instrumento = d.id_instrumento ";
+    private static final String LINEAS = SELECT_LINEAS + "WHERE p.fecha >= ? AND p.fecha < ? " +
+            "AND (p.estado_actual IS NULL OR p.estado_actual <> '" + EstadosPedido.CANCELADO + "') ORDER BY p.id_pedido";
+    private static final String LINEAS_DE_PEDIDOS = SELECT_LINEAS + "WHERE p.id_pedido IN (:ids) ORDER BY p.id_pedido";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final int maximoDiasReconstruccion;
+
+    public VentasDiariasService(JdbcTemplate jdbcTemplate,
+                                NamedParameterJdbcTemplate namedJdbcTemplate,
+                                @Value("${instrumentos.reportes.reconstruccion.maximo-dias:366}") int maximoDiasReconstruccion) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.maximoDiasReconstruccion = maximoDiasReconstruccion;
+    }
+
+    // Detalles con su instrumento (y la categoría) cargados
+    public void sumar(Date fecha, List<DetallePedido> detalles) {
+        aplicar(dia(fecha), aportes(lineas(detalles)), 1);
+    }
+
+    public void restar(Date fecha, List<DetallePedido> detalles) {
+        aplicar(dia(fecha), aportes(lineas(detalles)), -1);
+    }
+
+    // Resta varios pedidos a la vez (cancelaciones en lote): una actualización por día e instrumento.
+    // Leído de la base, así que llamar antes de marcar los pedidos como cancelados no cambia el resultado
+    public void restarPedidos(Collection<Long> idsPedido) {
+        if (idsPedido.isEmpty()) {
+            return;
+        }
+        LectorAportes lector = new LectorAportes();
+        namedJdbcTemplate.query(LINEAS_DE_PEDIDOS, Map.of("ids", idsPedido), lector);
+        lector.terminar().forEach((dia, aportes) -> aplicar(dia, aportes, -1));
+    }
+
+    // Vuelve a calcular los días indicados desde pedidos y detalle_pedido.
+    // Pensado para pocas escrituras: un pedido confirmado en el rango mientras corre puede quedar afuera.
+    // Todo el rango es una transacción, por eso se acota a maximoDiasReconstruccion días
+    public int reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("La fecha desde no puede ser posterior a hasta");
+        }
+        if (ChronoUnit.DAYS.between(desde, hasta) >= maximoDiasReconstruccion) {
+            throw new IllegalArgumentException("El rango a reconstruir no puede superar " + maximoDiasReconstruccion + " días");
+        }
+        return reconstruirRango(desde, hasta);
+    }
+
+    // Desde el primer pedido hasta hoy (al iniciar la aplicación, sin el tope de días)
+    public int reconstruirTodo() {
+        Timestamp primero = jdbcTemplate.queryForObject("SELECT MIN(fecha) FROM pedidos", Timestamp.class);
+        if (primero == null) {
+            return 0;
+        }
+        return reconstruirRango(dia(primero), LocalDate.now());
+    }
+
+    private int reconstruirRango(LocalDate desde, LocalDate hasta) {
+        int filas = 0;
+        for (LocalDate inicio = desde; !inicio.isAfter(hasta); inicio = inicio.plusDays(DIAS_POR_RECONSTRUCCION)) {
+            LocalDate fin = inicio.plusDays(DIAS_POR_RECONSTRUCCION - 1);
+            filas += reconstruirTramo(inicio, fin.isAfter(hasta) ? hasta : fin);
+        }
+        log.info("Ventas diarias reconstruidas del {} al {}: {} filas", desde, hasta, filas);
+        return filas;
+    }
+
+    private int reconstruirTramo(LocalDate desde, LocalDate hasta) {
+        jdbcTemplate.update("DELETE FROM ventas_diarias WHERE dia >= ? AND dia <= ?",
+                java.sql.Date.valueOf(desde), java.sql.Date.valueOf(hasta));
+
+        LectorAportes lector = new LectorAportes();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LINEAS);
+            ps.setFetchSize(LOTE);
+            ps.setTimestamp(1, Timestamp.valueOf(desde.atStartOfDay()));
+            ps.setTimestamp(2, Timestamp.valueOf(hasta.plusDays(1).atStartOfDay()));
+            return ps;
+        }, lector);
+        Map<LocalDate, SortedMap<Long, Aporte>> porDia = lector.terminar();
+
+        List<Object[]> filas = new ArrayList<>();
+        porDia.forEach((dia, aportes) -> aportes.forEach((idInstrumento, aporte) ->
+                filas.add(fila(dia, idInstrumento, aporte))));
+        jdbcTemplate.batchUpdate(INSERTAR, filas, LOTE, (ps, fila) -> {
+            for (int i = 0; i < fila.length; i++) {
+                ps.setObject(i + 1, fila[i]);
+            }
+        });
+        return filas.size();
+    }
+
+    // Un solo batch por día: al sumar, un upsert por instrumento; al restar, un UPDATE (la fila ya tiene que existir:
+    // si falta, insertarla en negativo escondería el problema en lugar de avisar que hay que reconstruir el rango)
+    private void aplicar(LocalDate dia, SortedMap<Long, Aporte> aportes, int signo) {
+        java.sql.Date fecha = java.sql.Date.valueOf(dia);
+        List<Map.Entry<Long, Aporte>> filas = new ArrayList<>(aportes.entrySet());
+        if (signo > 0) {
+            jdbcTemplate.batchUpdate(ACUMULAR, filas, filas.size(), (ps, fila) -> {
+                Object[] valores = fila(dia, fila.getKey(), fila.getValue());
+                for (int i = 0; i < valores.length; i++) {
+                    ps.setObject(i + 1, valores[i]);
+                }
+            });
+            return;
+        }
+
+        int[][] actualizadas = jdbcTemplate.batchUpdate(DESCONTAR, filas, filas.size(), (ps, fila) -> {
+            Aporte aporte = fila.getValue();
+            ps.setDouble(1, aporte.ingresos);
+            ps.setLong(2, aporte.unidades);
+            ps.setLong(3, aporte.pedidos);
+            ps.setLong(4, aporte.primerosDelPedido);
+            ps.setLong(5, aporte.primerosDeCategoria);
+            ps.setDate(6, fecha);
+            ps.setLong(7, fila.getKey());
+        });
+        for (int i = 0; i < filas.size(); i++) {
+            if (actualizadas[0][i] == 0) {
+                log.warn("Sin ventas diarias del {} para el instrumento {}: reconstruir el rango", dia, filas.get(i).getKey());
+            }
+        }
+    }
+
+    private static Object[] fila(LocalDate dia, Long idInstrumento, Aporte aporte) {
+        return new Object[]{java.sql.Date.valueOf(dia), idInstrumento, aporte.ingresos, aporte.unidades,
+                aporte.pedidos, aporte.primerosDelPedido, aporte.primerosDeCategoria};
+    }
+
+    // Aporte de un pedido a cada uno de sus instrumentos, ordenado por id de instrumento
+    private static SortedMap<Long, Aporte> aportes(List<Linea> lineas) {
+        SortedMap<Long, Aporte> aportes = new TreeMap<>();
+        Map<Long, Long> primeroPorCategoria = new HashMap<>();
+        for (Linea linea : lineas) {
+            Aporte aporte = aportes.computeIfAbsent(linea.idInstrumento, id -> new Aporte());
+            aporte.ingresos += linea.subtotal;
+            aporte.unidades += linea.cantidad;
+            aporte.pedidos = 1;
+            primeroPorCategoria.merge(linea.idCategoria, linea.idInstrumento, Math::min);
+        }
+        if (!aportes.isEmpty()) {
+            aportes.get(aportes.firstKey()).primerosDelPedido = 1;
+        }
+        primeroPorCategoria.values().forEach(idInstrumento -> aportes.get(idInstrumento).primerosDeCategoria = 1);
+        return aportes;
+    }
+
+    private static List<Linea> lineas(List<DetallePedido> detalles) {
+        List<Linea> lineas = new ArrayList<>(detalles.size());
+        for (DetallePedido detalle : detalles) {
+            Instrumento instrumento = detalle.getInstrumento();
+            Long idCategoria = instrumento.getCategoriaInstrumento() != null
+                    ? instrumento.getCategoriaInstrumento().getIdCategoriaInstrumento() : null;
+            lineas.add(new Linea(instrumento.getIdInstrumento(), idCategoria, detalle.getCantidad(),
+                    detalle.getSubtotal() != null ? detalle.getSubtotal() : 0.0));
+        }
+        return lineas;
+    }
+
+    private static LocalDate dia(Date fecha) {
+        return fecha.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    // Las filas llegan ordenadas por pedido: cada pedido se aporta completo al cambiar de id
+    private static final class LectorAportes implements RowCallbackHandler {
+        private final Map<LocalDate, SortedMap<Long, Aporte>> porDia = new TreeMap<>();
+        private final List<Linea> lineas = new ArrayList<>();
+        private long idPedido;
+        private LocalDate dia;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            if (!lineas.isEmpty() && id != idPedido) {
+                acumular();
+            }
+            idPedido = id;
+            dia = dia(rs.getTimestamp(2));
+            long idCategoria = rs.getLong(4);
+            lineas.add(new Linea(rs.getLong(3), rs.wasNull() ? null : idCategoria, rs.getInt(5), rs.getDouble(6)));
+        }
+
+        private Map<LocalDate, SortedMap<Long, Aporte>> terminar() {
+            if (!lineas.isEmpty()) {
+                acumular();
+            }
+            return porDia;
+        }
+
+        private void acumular() {
+            SortedMap<Long, Aporte> delDia = porDia.computeIfAbsent(dia, d -> new TreeMap<>());
+            aportes(lineas).forEach((idInstrumento, aporte) -> delDia.merge(idInstrumento, aporte, Aporte::sumar));
+            lineas.clear();
+        }
+    }
+
+    private static final class Linea {
+        private final Long idInstrumento;
+        private final Long idCategoria;
+        private final int cantidad;
+        private final double subtotal;
+
+        private Linea(Long idInstrumento, Long idCategoria, int cantidad, double subtotal) {
+            this.idInstrumento = idInstrumento;
+            this.idCategoria = idCategoria;
+            this.cantidad = cantidad;
+            this.subtotal = subtotal;
+        }
+    }
+
+    private static final class Aporte {
+        private double ingresos;
+        private long unidades;
+        private long pedidos;
+        private long primerosDelPedido;
+        private long primerosDeCategoria;
+
+        private Aporte sumar(Aporte otro) {
+            ingresos += otro.ingresos;
+            unidades += otro.unidades;
+            pedidos += otro.pedidos;
+            primerosDelPedido += otro.primerosDelPedido;
+            primerosDeCategoria += otro.primerosDeCategoria;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.instrumentos;
+
+import com.example.instrumentos.model.CategoriaInstrumento;
+import com.example.instrumentos.model.DetallePedido;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.model.Pedido;
+import com.example.instrumentos.model.Usuario;
+import com.example.instrumentos.repository.InstrumentoRepository;
+import com.example.instrumentos.repository.UsuarioRepository;
+import com.example.instrumentos.service.CategoriaService;
+import com.example.instrumentos.service.InstrumentoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Altas y lecturas que repiten los tests de integración; se agrega al contexto con @Import
+@TestComponent
+public class DatosDePrueba {
+
+    @Autowired
+    private InstrumentoService instrumentoService;
+
+    @Autowired
+    private CategoriaService categoriaService;
+
+    @Autowired
+    private InstrumentoRepository instrumentoRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    // Instrumento con una categoría propia, para que los tests no compartan filas
+    public Instrumento crearInstrumento(String codigo, int stock) {
+        return crearInstrumento(codigo, categoriaService.save(new CategoriaInstrumento("Pruebas " + codigo)), stock, 100.0);
+    }
+
+    public Instrumento crearInstrumento(String codigo, CategoriaInstrumento categoria, int stock, double precio) {
+        Instrumento instrumento = new Instrumento();
+        instrumento.setCodigo(codigo);
+        instrumento.setDenominacion("Instrumento " + codigo);
+        instrumento.setMarca("Marca");
+        instrumento.setDescripcion("Descripción");
+        instrumento.setStock(stock);
+        instrumento.setCategoriaInstrumento(categoria);
+        instrumento.setPrecioActual(precio);
+        return instrumentoService.save(instrumento);
+    }
+
+    // Pedido del primer usuario cargado por el DataInitializer
+    public Pedido pedido(DetallePedido... detalles) {
+        Usuario usuario = new Usuario();
+        usuario.setIdUsuario(usuarioRepository.findAll().get(0).getIdUsuario());
+        Pedido pedido = new Pedido();
+        pedido.setUsuario(usuario);
+        pedido.setDetalles(new ArrayList<>(Arrays.asList(detalles)));
+        return pedido;
+    }
+
+    public Pedido pedido(Instrumento instrumento, int cantidad) {
+        return pedido(detalle(instrumento.getIdInstrumento(), cantidad));
+    }
+
+    public static DetallePedido detalle(Instrumento instrumento, int cantidad) {
+        return detalle(instrumento.getIdInstrumento(), cantidad);
+    }
+
+    // El detalle sólo referencia el id, como llega en el cuerpo de un POST
+    public static DetallePedido detalle(Long idInstrumento, int cantidad) {
+        Instrumento referencia = new Instrumento();
+        referencia.setIdInstrumento(idInstrumento);
+        DetallePedido detalle = new DetallePedido();
+        detalle.setInstrumento(referencia);
+        detalle.setCantidad(cantidad);
+        return detalle;
+    }
+
+    public int stock(Instrumento instrumento) {
+        return stock(instrumento.getIdInstrumento());
+    }
+
+    public int stock(Long idInstrumento) {
+        return instrumentoRepository.findById(idInstrumento).orElseThrow().getStock();
+    }
+
+    public Long idUsuario() {
+        return usuarioRepository.findAll().get(0).getIdUsuario();
+    }
+}
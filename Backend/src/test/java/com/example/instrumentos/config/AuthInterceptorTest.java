@@ -0,0 +1,126 @@
+package com.example.instrumentos.config;
+
+import com.example.instrumentos.model.Usuario;
+import com.example.instrumentos.repository.RolRepository;
+import com.example.instrumentos.repository.UsuarioRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// El interceptor corre sobre toda la aplicación: las rutas se piden con el context-path (/api), como llegan en producción
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+class AuthInterceptorTest {
+
+    // Rutas que sólo puede usar un administrador
+    private static final List<Map.Entry<HttpMethod, String>> RUTAS_ADMIN = List.of(
+            Map.entry(HttpMethod.POST, "/instrumentos"),
+            Map.entry(HttpMethod.POST, "/categorias"),
+            Map.entry(HttpMethod.GET, "/catalogo/metricas"),
+            Map.entry(HttpMethod.GET, "/pedidos/recepcion/metricas"),
+            Map.entry(HttpMethod.GET, "/pedidos/export"),
+            Map.entry(HttpMethod.POST, "/pedidos/vencer"),
+            Map.entry(HttpMethod.PATCH, "/pedidos/estado"),
+            Map.entry(HttpMethod.GET, "/reportes/ventas"),
+            Map.entry(HttpMethod.GET, "/usuarios")
+    );
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Test
+    void loginYRegistroNoPidenAutenticacion() throws Exception {
+        mockMvc.perform(api(HttpMethod.POST, "/usuarios/registro")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"nombreUsuario\":\"registro@instrumentos.com\",\"clave\":\"clave123\",\"rol\":\"Visor\"}"))
+                .andExpect(status().isCreated());
+        mockMvc.perform(api(HttpMethod.POST, "/usuarios/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"nombreUsuario\":\"admin@instrumentos.com\",\"clave\":\"admin123\"}"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void catalogoPublicoSoloParaLectura() throws Exception {
+        mockMvc.perform(api(HttpMethod.GET, "/instrumentos")).andExpect(status().isOk());
+        mockMvc.perform(api(HttpMethod.GET, "/categorias")).andExpect(status().isOk());
+
+        mockMvc.perform(api(HttpMethod.POST, "/instrumentos").contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(api(HttpMethod.DELETE, "/categorias/1")).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void preflightDeCorsNoPideAutenticacion() throws Exception {
+        mockMvc.perform(api(HttpMethod.OPTIONS, "/pedidos")
+                        .header(HttpHeaders.ORIGIN, "http://localhost:3000")
+                        .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "POST")
+                        .header(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS, "X-User-Id"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "http://localhost:3000"));
+    }
+
+    @Test
+    void elRestoDeLasRutasPideUnUsuarioValido() throws Exception {
+        for (String ruta : List.of("/pedidos", "/pedidos/1", "/pedidos/usuario/1", "/usuarios/1")) {
+            mockMvc.perform(api(HttpMethod.GET, ruta)).andExpect(status().isUnauthorized());
+            mockMvc.perform(api(HttpMethod.GET, ruta).header("X-User-Id", "-1")).andExpect(status().isUnauthorized());
+        }
+        mockMvc.perform(api(HttpMethod.GET, "/pedidos").header("X-User-Id", "abc")).andExpect(status().isUnauthorized());
+        mockMvc.perform(api(HttpMethod.GET, "/pedidos").header("X-User-Id", visor().getIdUsuario()))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void rutasDeAdministradorRechazanAOtrosRoles() throws Exception {
+        Long visor = visor().getIdUsuario();
+        Long admin = usuarioRepository.findByEmail("admin@instrumentos.com").orElseThrow().getIdUsuario();
+        for (Map.Entry<HttpMethod, String> ruta : RUTAS_ADMIN) {
+            int sinUsuario = mockMvc.perform(api(ruta.getKey(), ruta.getValue()))
+                    .andReturn().getResponse().getStatus();
+            int comoVisor = mockMvc.perform(api(ruta.getKey(), ruta.getValue()).header("X-User-Id", visor))
+                    .andReturn().getResponse().getStatus();
+            int comoAdmin = mockMvc.perform(api(ruta.getKey(), ruta.getValue()).header("X-User-Id", admin))
+                    .andReturn().getResponse().getStatus();
+
+            assertEquals(401, sinUsuario, ruta.toString());
+            assertEquals(403, comoVisor, ruta.toString());
+            // El administrador pasa el interceptor; el controlador puede rechazar el cuerpo vacío
+            assertNotEquals(401, comoAdmin, ruta.toString());
+            assertNotEquals(403, comoAdmin, ruta.toString());
+        }
+    }
+
+    private static MockHttpServletRequestBuilder api(HttpMethod metodo, String ruta) {
+        return request(metodo, "/api" + ruta).contextPath("/api");
+    }
+
+    private Usuario visor() {
+        return usuarioRepository.findByEmail("visor@instrumentos.com").orElseGet(() -> usuarioRepository.save(
+                new Usuario("Visor", "Pruebas", "visor@instrumentos.com", "x",
+                        rolRepository.findByDefinicion("Visor").orElseThrow())));
+    }
+}
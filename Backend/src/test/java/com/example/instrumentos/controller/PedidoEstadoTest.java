@@ -0,0 +1,73 @@
+package com.example.instrumentos.controller;
+
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.repository.PedidoRepository;
+import com.example.instrumentos.service.EstadosPedido;
+import com.example.instrumentos.service.PedidoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+@AutoConfigureMockMvc
+class PedidoEstadoTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Test
+    void transicionNoPermitidaDevuelve409SinCambiarElPedido() throws Exception {
+        Instrumento instrumento = datos.crearInstrumento("PAT-1", 5);
+        Long id = pedidoService.save(datos.pedido(instrumento, 2)).getIdPedido();
+
+        cambiarEstado(id, EstadosPedido.CANCELADO).andExpect(status().isOk());
+        assertEquals(5, datos.stock(instrumento));
+
+        cambiarEstado(id, EstadosPedido.ENVIADO)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").exists());
+        // Cancelar de nuevo también es un conflicto y no devuelve el stock otra vez
+        cambiarEstado(id, EstadosPedido.CANCELADO).andExpect(status().isConflict());
+
+        assertEquals(EstadosPedido.CANCELADO, pedidoRepository.findById(id).orElseThrow().getEstadoActual());
+        assertEquals(5, datos.stock(instrumento));
+    }
+
+    @Test
+    void estadoDesconocidoDevuelve400() throws Exception {
+        Long id = pedidoService.save(datos.pedido(datos.crearInstrumento("PAT-2", 5), 1)).getIdPedido();
+
+        cambiarEstado(id, "PERDIDO").andExpect(status().isBadRequest());
+        assertEquals(EstadosPedido.PENDIENTE, pedidoRepository.findById(id).orElseThrow().getEstadoActual());
+    }
+
+    private ResultActions cambiarEstado(Long id, String estado) throws Exception {
+        return mockMvc.perform(patch("/api/pedidos/" + id + "/estado").contextPath("/api")
+                .header("X-User-Id", datos.idUsuario())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"estado\":\"" + estado + "\"}"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.instrumentos.controller;
+
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.repository.PedidoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+@AutoConfigureMockMvc
+class PedidoIdempotenciaTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Test
+    void repeticionDevuelveLaRespuestaGuardadaSinTocarElStock() throws Exception {
+        Long id = datos.crearInstrumento("IDEM-1", 10).getIdInstrumento();
+        long pedidosAntes = pedidoRepository.count();
+
+        MockHttpServletResponse primera = crearPedido("clave-repetida", cuerpo(id, 2));
+        MockHttpServletResponse repetida = crearPedido("clave-repetida", cuerpo(id, 2));
+
+        assertEquals(201, primera.getStatus());
+        assertEquals("false", primera.getHeader("Idempotent-Replayed"));
+        assertEquals(201, repetida.getStatus());
+        assertEquals("true", repetida.getHeader("Idempotent-Replayed"));
+        assertEquals(primera.getContentAsString(), repetida.getContentAsString());
+        assertEquals(pedidosAntes + 1, pedidoRepository.count());
+        assertEquals(8, datos.stock(id));
+    }
+
+    @Test
+    void mismaClaveConOtroPedidoDevuelve409() throws Exception {
+        Long id = datos.crearInstrumento("IDEM-2", 10).getIdInstrumento();
+
+        assertEquals(201, crearPedido("clave-distinta", cuerpo(id, 1)).getStatus());
+        assertEquals(409, crearPedido("clave-distinta", cuerpo(id, 3)).getStatus());
+        assertEquals(9, datos.stock(id));
+    }
+
+    @Test
+    void solicitudesConcurrentesConLaMismaClaveCreanUnSoloPedido() throws Exception {
+        Long id = datos.crearInstrumento("IDEM-3", 10).getIdInstrumento();
+        long pedidosAntes = pedidoRepository.count();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<MockHttpServletResponse>> respuestas = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                respuestas.add(hilos.submit(() -> {
+                    largada.await();
+                    return crearPedido("clave-concurrente", cuerpo(id, 2));
+                }));
+            }
+            largada.countDown();
+            String primerCuerpo = null;
+            for (Future<MockHttpServletResponse> respuesta : respuestas) {
+                MockHttpServletResponse resultado = respuesta.get(30, TimeUnit.SECONDS);
+                assertEquals(201, resultado.getStatus());
+                if (primerCuerpo == null) {
+                    primerCuerpo = resultado.getContentAsString();
+                }
+                assertEquals(primerCuerpo, resultado.getContentAsString());
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        assertEquals(pedidosAntes + 1, pedidoRepository.count());
+        assertEquals(8, datos.stock(id));
+    }
+
+    private MockHttpServletResponse crearPedido(String clave, String cuerpo) throws Exception {
+        return mockMvc.perform(post("/pedidos")
+                        .header("X-User-Id", datos.idUsuario())
+                        .header("Idempotency-Key", clave)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(cuerpo))
+                .andReturn().getResponse();
+    }
+
+    private static String cuerpo(Long idInstrumento, int cantidad) {
+        return "{\"detalles\":[{\"instrumento\":{\"idInstrumento\":" + idInstrumento + "},\"cantidad\":" + cantidad + "}]}";
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.instrumentos.controller;
+
+import com.example.instrumentos.model.Usuario;
+import com.example.instrumentos.repository.UsuarioRepository;
+import com.example.instrumentos.service.RecepcionPedidosService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+class PedidoRecepcionTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @MockitoBean
+    private RecepcionPedidosService recepcionPedidosService;
+
+    @Test
+    void colaLlenaDevuelve503ConRetryAfter() throws Exception {
+        when(recepcionPedidosService.encolar(any())).thenThrow(new RecepcionPedidosService.ColaLlenaException());
+
+        mockMvc.perform(post("/api/pedidos").contextPath("/api")
+                        .param("async", "true")
+                        .header("X-User-Id", admin().getIdUsuario())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"detalles\":[{\"instrumento\":{\"idInstrumento\":1},\"cantidad\":1}]}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.error").exists());
+    }
+
+    private Usuario admin() {
+        return usuarioRepository.findByEmail("admin@instrumentos.com").orElseThrow();
+    }
+}
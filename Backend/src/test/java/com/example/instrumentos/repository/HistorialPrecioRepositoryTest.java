@@ -0,0 +1,101 @@
+package com.example.instrumentos.repository;
+
+import com.example.instrumentos.model.CategoriaInstrumento;
+import com.example.instrumentos.model.HistorialPrecioInstrumento;
+import com.example.instrumentos.model.Instrumento;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.example.instrumentos.repository.HistorialPrecioRepositoryTest$UltimaConsulta"
+})
+class HistorialPrecioRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private HistorialPrecioRepository historialPrecioRepository;
+
+    @Autowired
+    private HistorialPrecioArchivadoRepository archivadoRepository;
+
+    @Test
+    void ultimoPrecioUsaIndiceInstrumentoFecha() {
+        Instrumento instrumento = cargarInstrumento("Piano", 1_000L, 2_000L, 3_000L);
+        cargarInstrumento("Guitarra", 1_000L, 2_000L);
+
+        UltimaConsulta.sql = null;
+        assertEquals(300.0, historialPrecioRepository.findLatestByInstrumentoId(instrumento.getIdInstrumento())
+                .orElseThrow().getPrecio());
+
+        // Plan de la consulta que generó Hibernate, con el parámetro reemplazado por el id
+        String consulta = UltimaConsulta.sql.replace("?", String.valueOf(instrumento.getIdInstrumento()));
+        String plan = String.valueOf(entityManager.getEntityManager()
+                .createNativeQuery("EXPLAIN " + consulta).getSingleResult());
+
+        assertTrue(plan.toUpperCase().contains("IDX_HISTORIAL_INSTRUMENTO_FECHA"), plan);
+    }
+
+    @Test
+    void archivoConservaElUltimoPrecio() {
+        Instrumento instrumento = cargarInstrumento("Bajo", 1_000L, 2_000L, 3_000L);
+
+        // El corte es posterior a todo el historial: sólo califican los precios reemplazados
+        List<Long> ids = historialPrecioRepository.findIdsReemplazadosAntesDe(new Date(10_000L), 0L, Limit.of(10));
+        assertEquals(2, ids.size());
+        assertEquals(2, archivadoRepository.archivar(ids));
+        assertEquals(2, historialPrecioRepository.deleteByIdIn(ids));
+        entityManager.clear();
+
+        List<HistorialPrecioInstrumento> restantes =
+                historialPrecioRepository.findByInstrumento_IdInstrumentoOrderByFechaDesc(instrumento.getIdInstrumento());
+        assertEquals(1, restantes.size());
+        assertEquals(300.0, restantes.get(0).getPrecio());
+        assertEquals(2, archivadoRepository.count());
+        assertTrue(historialPrecioRepository.findIdsReemplazadosAntesDe(new Date(10_000L), 0L, Limit.of(10)).isEmpty());
+    }
+
+    private Instrumento cargarInstrumento(String denominacion, long... fechas) {
+        CategoriaInstrumento categoria = entityManager.persist(new CategoriaInstrumento(denominacion));
+        Instrumento instrumento = new Instrumento();
+        instrumento.setCodigo(denominacion);
+        instrumento.setDenominacion(denominacion);
+        instrumento.setMarca("Marca");
+        instrumento.setStock(1);
+        instrumento.setCategoriaInstrumento(categoria);
+        entityManager.persist(instrumento);
+
+        for (int i = 0; i < fechas.length; i++) {
+            HistorialPrecioInstrumento historial = new HistorialPrecioInstrumento(instrumento, 100.0 * (i + 1));
+            historial.setFecha(new Date(fechas[i]));
+            entityManager.persist(historial);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return instrumento;
+    }
+
+    // Guarda el último SQL preparado por Hibernate
+    public static class UltimaConsulta implements StatementInspector {
+        static volatile String sql;
+
+        @Override
+        public String inspect(String sql) {
+            UltimaConsulta.sql = sql;
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.instrumentos.repository;
+
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.model.CategoriaInstrumento;
+import com.example.instrumentos.model.HistorialPrecioInstrumento;
+import com.example.instrumentos.model.Instrumento;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class InstrumentoRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private InstrumentoRepository instrumentoRepository;
+
+    @Test
+    void catalogoUsaCantidadConstanteDeConsultas() {
+        CategoriaInstrumento categoria = entityManager.persist(new CategoriaInstrumento("Cuerda"));
+
+        cargarInstrumentos(categoria, 0, 5);
+        long consultasCatalogoChico = contarConsultas(() -> assertEquals(5, instrumentoRepository.findCatalogo().size()));
+
+        cargarInstrumentos(categoria, 5, 50);
+        long consultasCatalogoGrande = contarConsultas(() -> assertEquals(50, instrumentoRepository.findCatalogo().size()));
+
+        assertEquals(1, consultasCatalogoChico);
+        assertEquals(consultasCatalogoChico, consultasCatalogoGrande);
+        assertEquals(1, contarConsultas(() ->
+                assertEquals(50, instrumentoRepository.findCatalogoByCategoria(categoria.getIdCategoriaInstrumento()).size())));
+    }
+
+    @Test
+    void recalculoTomaElUltimoPrecioDelHistorial() {
+        CategoriaInstrumento categoria = entityManager.persist(new CategoriaInstrumento("Viento"));
+        cargarInstrumentos(categoria, 0, 3);
+        assertEquals(3, instrumentoRepository.countSinPrecioActual());
+
+        assertEquals(3, instrumentoRepository.recalcularPreciosActuales());
+        entityManager.clear();
+
+        assertEquals(0, instrumentoRepository.countSinPrecioActual());
+        List<InstrumentoRequestDTO> catalogo = instrumentoRepository.findCatalogoByCategoria(categoria.getIdCategoriaInstrumento());
+
+        assertEquals(3, catalogo.size());
+        catalogo.forEach(dto -> {
+            assertEquals(200.0, dto.getPrecio());
+            assertEquals("Viento", dto.getCategoria());
+        });
+    }
+
+    private void cargarInstrumentos(CategoriaInstrumento categoria, int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            Instrumento instrumento = new Instrumento();
+            instrumento.setCodigo(categoria.getDenominacion() + "-" + i);
+            instrumento.setDenominacion("Instrumento " + i);
+            instrumento.setMarca("Marca");
+            instrumento.setStock(10);
+            instrumento.setCategoriaInstrumento(categoria);
+            entityManager.persist(instrumento);
+
+            entityManager.persist(historial(instrumento, 100.0, new Date(1_000L)));
+            entityManager.persist(historial(instrumento, 200.0, new Date(2_000L)));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private HistorialPrecioInstrumento historial(Instrumento instrumento, Double precio, Date fecha) {
+        HistorialPrecioInstrumento historial = new HistorialPrecioInstrumento(instrumento, precio);
+        historial.setFecha(fecha);
+        return historial;
+    }
+
+    private long contarConsultas(Runnable lectura) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        lectura.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.FacetaValorDTO;
+import com.example.instrumentos.dto.FacetasResponseDTO;
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import com.example.instrumentos.model.CategoriaInstrumento;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FacetaServiceTest {
+
+    private FacetaService facetaService;
+
+    @BeforeEach
+    void crearCatalogo() {
+        List<InstrumentoRequestDTO> catalogo = List.of(
+                instrumento(1L, 10L, "Yamaha", 300.0, 5),
+                instrumento(2L, 10L, "Fender", 700.0, 0),
+                instrumento(3L, 10L, "yamaha ", 1100.0, 2),
+                instrumento(4L, 20L, "Yamaha", 1300.0, 1),
+                instrumento(5L, 20L, "Roland", 6000.0, 3));
+        Map<Long, InstrumentoRequestDTO> porId = new HashMap<>();
+        catalogo.forEach(dto -> porId.put(dto.getIdInstrumento(), dto));
+
+        CatalogoCache catalogoCache = mock(CatalogoCache.class);
+        when(catalogoCache.findAll()).thenReturn(catalogo);
+        when(catalogoCache.findById(anyLong()))
+                .thenAnswer(invocacion -> Optional.ofNullable(porId.get(invocacion.<Long>getArgument(0))));
+        when(catalogoCache.findCategoriaById(anyLong()))
+                .thenAnswer(invocacion -> Optional.of(new CategoriaInstrumento("Categoría " + invocacion.getArgument(0))));
+
+        facetaService = new FacetaService(catalogoCache, new double[]{500, 1000, 2500, 5000, 10000});
+    }
+
+    @Test
+    void filtrosCombinadosYConteosSinElFiltroDeCadaFaceta() {
+        FacetasResponseDTO respuesta = facetaService.filtrar(Set.of(10L), Set.of("YAMAHA"), null, null, false, null, null);
+
+        assertEquals(List.of(1L, 3L), ids(respuesta));
+        assertEquals(2, respuesta.getTotal());
+        // La marca se compara sin mayúsculas ni espacios
+        assertEquals(Map.of("10", 2, "20", 1), conteos(respuesta, "categoria"));
+        assertEquals(Map.of("yamaha", 2, "fender", 1), conteos(respuesta, "marca"));
+        assertEquals(Map.of("true", 2), conteos(respuesta, "stock"));
+    }
+
+    @Test
+    void rangoDePrecioVerificaLasBandasDeLosBordes() {
+        FacetasResponseDTO respuesta = facetaService.filtrar(null, null, 600.0, 1200.0, false, null, null);
+
+        assertEquals(List.of(2L, 3L), ids(respuesta));
+        // Los conteos de precio ignoran el rango; el resto de las facetas lo respeta
+        assertEquals(Map.of("0", 1, "1", 1, "2", 2, "4", 1), conteos(respuesta, "precio"));
+        assertEquals(Map.of("10", 2), conteos(respuesta, "categoria"));
+    }
+
+    @Test
+    void soloEnStockYPaginacionPorCursor() {
+        FacetasResponseDTO primera = facetaService.filtrar(null, null, null, null, true, null, 2);
+        assertEquals(List.of(1L, 3L), ids(primera));
+        assertEquals(4, primera.getTotal());
+        assertNotNull(primera.getNext());
+
+        FacetasResponseDTO segunda = facetaService.filtrar(null, null, null, null, true, primera.getNext(), 2);
+        assertEquals(List.of(4L, 5L), ids(segunda));
+        assertNull(segunda.getNext());
+    }
+
+    @Test
+    void cursorFueraDelRangoDeIdsEsInvalido() {
+        for (long id : new long[]{-5L, Integer.MAX_VALUE, Long.MAX_VALUE}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                    facetaService.filtrar(null, null, null, null, false, Paginacion.cursorId(id), null));
+            assertEquals("Cursor inválido", e.getMessage());
+        }
+    }
+
+    @Test
+    void precioMinimoMayorQueElMaximoEsInvalido() {
+        assertThrows(IllegalArgumentException.class, () ->
+                facetaService.filtrar(null, null, 2000.0, 1000.0, false, null, null));
+    }
+
+    private static List<Long> ids(FacetasResponseDTO respuesta) {
+        return respuesta.getItems().stream().map(InstrumentoRequestDTO::getIdInstrumento).toList();
+    }
+
+    private static Map<String, Integer> conteos(FacetasResponseDTO respuesta, String faceta) {
+        Map<String, Integer> conteos = new HashMap<>();
+        for (FacetaValorDTO valor : respuesta.getFacetas().get(faceta)) {
+            conteos.put(valor.getValor(), valor.getCantidad());
+        }
+        return conteos;
+    }
+
+    private static InstrumentoRequestDTO instrumento(Long id, Long idCategoria, String marca, Double precio, int stock) {
+        InstrumentoRequestDTO dto = new InstrumentoRequestDTO();
+        dto.setIdInstrumento(id);
+        dto.setDenominacion("Instrumento " + id);
+        dto.setIdCategoriaInstrumento(idCategoria);
+        dto.setMarca(marca);
+        dto.setPrecio(precio);
+        dto.setStock(stock);
+        return dto;
+    }
+}
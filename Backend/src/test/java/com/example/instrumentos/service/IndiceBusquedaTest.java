@@ -0,0 +1,84 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.InstrumentoRequestDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceBusquedaTest {
+
+    private IndiceBusqueda indice;
+
+    @BeforeEach
+    void indexarCatalogo() {
+        indice = new IndiceBusqueda();
+        indice.indexar(instrumento(1L, "Guitarra criolla", "Gracia", "Tapa de pino, ideal para estudio"));
+        indice.indexar(instrumento(2L, "Funda acolchada", "Ortega", "Funda para guitarra clásica"));
+        indice.indexar(instrumento(3L, "Batería acústica", "Yamaha", "Cinco cuerpos con platillos"));
+        indice.indexar(instrumento(4L, "Teclado", "Yamaha", "61 teclas sensibles"));
+    }
+
+    @Test
+    void laDenominacionPesaMasQueLaDescripcion() {
+        assertEquals(List.of(1L, 2L), indice.buscar("guitarra", 10));
+    }
+
+    @Test
+    void pluralesYAcentosSeNormalizan() {
+        assertEquals(List.of(1L, 2L), indice.buscar("GUITARRAS", 10));
+        assertEquals(List.of(3L), indice.buscar("bateria", 10));
+    }
+
+    @Test
+    void toleraUnErrorDeTipeoPeroNoDos() {
+        // borrado, sustitución y transposición adyacente
+        assertEquals(List.of(1L, 2L), indice.buscar("guitara", 10));
+        assertEquals(List.of(1L, 2L), indice.buscar("guitorra", 10));
+        assertEquals(List.of(1L, 2L), indice.buscar("gutiarra", 10));
+        assertEquals(List.of(), indice.buscar("gitorra", 10));
+    }
+
+    @Test
+    void laCoincidenciaExactaSuperaALaAproximada() {
+        indice.indexar(instrumento(5L, "Violón", "Stentor", "Arco incluido"));
+        indice.indexar(instrumento(6L, "Violín", "Stentor", "Arco incluido"));
+
+        assertEquals(List.of(6L, 5L), indice.buscar("violin", 10));
+    }
+
+    @Test
+    void elUltimoTerminoSeCompletaPorPrefijo() {
+        assertEquals(List.of(4L, 3L), indice.buscar("yamaha tec", 10));
+        assertEquals(List.of(1L), indice.buscar("cri", 10));
+    }
+
+    @Test
+    void respetaElLimiteYQuitaDocumentos() {
+        assertEquals(List.of(1L), indice.buscar("guitarra", 1));
+
+        indice.quitar(1L);
+        assertEquals(List.of(2L), indice.buscar("guitarra", 10));
+        assertEquals(3, indice.size());
+    }
+
+    @Test
+    void distanciaDeUnaEdicion() {
+        assertTrue(IndiceBusqueda.distanciaMaximaUno("guitarr", "guitar"));
+        assertTrue(IndiceBusqueda.distanciaMaximaUno("guitarr", "gutiarr"));
+        assertTrue(IndiceBusqueda.distanciaMaximaUno("guitarr", "guitorr"));
+        assertFalse(IndiceBusqueda.distanciaMaximaUno("guitarr", "gitorr"));
+        assertFalse(IndiceBusqueda.distanciaMaximaUno("guitarr", "guitarrass"));
+    }
+
+    private static InstrumentoRequestDTO instrumento(Long id, String denominacion, String marca, String descripcion) {
+        InstrumentoRequestDTO dto = new InstrumentoRequestDTO();
+        dto.setIdInstrumento(id);
+        dto.setDenominacion(denominacion);
+        dto.setMarca(marca);
+        dto.setDescripcion(descripcion);
+        return dto;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.dto.ResultadoCambioEstadoDTO;
+import com.example.instrumentos.dto.ResumenCambioEstadosDTO;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.model.Pedido;
+import com.example.instrumentos.repository.PedidoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static com.example.instrumentos.DatosDePrueba.detalle;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+class PedidoServiceTest {
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void dosPedidosPorLaUltimaUnidadSoloConfirmanUno() throws Exception {
+        Instrumento instrumento = datos.crearInstrumento("ULT-1", 1);
+        long pedidosAntes = pedidoRepository.count();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(2);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<Pedido>> resultados = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                resultados.add(hilos.submit(() -> {
+                    largada.await();
+                    return pedidoService.save(datos.pedido(instrumento, 1));
+                }));
+            }
+            largada.countDown();
+
+            List<Pedido> confirmados = new ArrayList<>();
+            int rechazados = 0;
+            for (Future<Pedido> resultado : resultados) {
+                try {
+                    confirmados.add(resultado.get(30, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IllegalArgumentException.class, e.getCause());
+                    rechazados++;
+                }
+            }
+
+            assertEquals(1, confirmados.size());
+            assertEquals(1, rechazados);
+            assertEquals(0, datos.stock(instrumento));
+            assertEquals(pedidosAntes + 1, pedidoRepository.count());
+
+            // Los detalles de la respuesta se arman en memoria, con el id que generó la base
+            Pedido confirmado = confirmados.get(0);
+            assertEquals(1, confirmado.getDetalles().size());
+            assertNotNull(confirmado.getDetalles().get(0).getIdDetallePedido());
+            assertEquals(confirmado.getTotalPedido(), confirmado.getDetalles().get(0).getSubtotal());
+        } finally {
+            hilos.shutdownNow();
+        }
+    }
+
+    @Test
+    void carritoConUnaLineaSinStockRevierteTodosLosDescuentos() {
+        Instrumento primero = datos.crearInstrumento("CAR-1", 5);
+        Instrumento segundo = datos.crearInstrumento("CAR-2", 5);
+        Instrumento corto = datos.crearInstrumento("CAR-3", 1);
+        long pedidosAntes = pedidoRepository.count();
+
+        Pedido pedido = datos.pedido(primero, 2);
+        pedido.getDetalles().add(detalle(segundo, 3));
+        pedido.getDetalles().add(detalle(corto, 2));
+
+        assertThrows(IllegalArgumentException.class, () -> pedidoService.save(pedido));
+
+        assertEquals(5, datos.stock(primero));
+        assertEquals(5, datos.stock(segundo));
+        assertEquals(1, datos.stock(corto));
+        assertEquals(pedidosAntes, pedidoRepository.count());
+    }
+
+    @Test
+    void cambioDeVariosPedidosInformaCadaUnoYConfirmaLosValidos() {
+        Instrumento instrumento = datos.crearInstrumento("EST-1", 10);
+        Long pendiente = pedidoService.save(datos.pedido(instrumento, 1)).getIdPedido();
+        Long otroPendiente = pedidoService.save(datos.pedido(instrumento, 1)).getIdPedido();
+        Long cancelado = pedidoService.save(datos.pedido(instrumento, 1)).getIdPedido();
+        pedidoService.actualizarEstadoPedido(cancelado, EstadosPedido.CANCELADO);
+        Long inexistente = -1L;
+
+        // Los ids repetidos se informan una sola vez, en el orden de la primera aparición
+        ResumenCambioEstadosDTO resumen = pedidoService.actualizarEstados(
+                List.of(pendiente, inexistente, cancelado, pendiente, otroPendiente), EstadosPedido.EN_PREPARACION);
+
+        assertEquals(2, resumen.getActualizados());
+        assertEquals(2, resumen.getRechazados());
+        List<ResultadoCambioEstadoDTO> resultados = resumen.getResultados();
+        assertEquals(List.of(pendiente, inexistente, cancelado, otroPendiente),
+                resultados.stream().map(ResultadoCambioEstadoDTO::getIdPedido).toList());
+        assertEquals(List.of(true, false, false, true),
+                resultados.stream().map(ResultadoCambioEstadoDTO::isActualizado).toList());
+        assertNull(resultados.get(1).getEstadoAnterior());
+        assertEquals(EstadosPedido.CANCELADO, resultados.get(2).getEstadoAnterior());
+        assertNotNull(resultados.get(2).getError());
+
+        // Los rechazos no revierten a los válidos: el cambio quedó confirmado, con su historial
+        assertEquals(EstadosPedido.EN_PREPARACION, pedidoRepository.findById(pendiente).orElseThrow().getEstadoActual());
+        assertEquals(EstadosPedido.EN_PREPARACION, pedidoRepository.findById(otroPendiente).orElseThrow().getEstadoActual());
+        assertEquals(EstadosPedido.CANCELADO, pedidoRepository.findById(cancelado).orElseThrow().getEstadoActual());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM estados_pedido WHERE id_pedido = ? AND estado = ?",
+                Integer.class, pendiente, EstadosPedido.EN_PREPARACION));
+        assertEquals(8, datos.stock(instrumento));
+    }
+
+    @Test
+    void cancelarVariosPedidosDevuelveElStockUnaVezPorInstrumentoYRestaLasVentas() {
+        Instrumento guitarra = datos.crearInstrumento("EST-2", 10);
+        Instrumento bajo = datos.crearInstrumento("EST-3", 10);
+        Long primero = pedidoService.save(datos.pedido(detalle(guitarra, 2), detalle(bajo, 1), detalle(guitarra, 3)))
+                .getIdPedido();
+        Long segundo = pedidoService.save(datos.pedido(detalle(guitarra, 1))).getIdPedido();
+        Long conservado = pedidoService.save(datos.pedido(detalle(bajo, 4))).getIdPedido();
+        assertEquals(4, datos.stock(guitarra));
+        assertEquals(6, unidadesVendidas(guitarra));
+
+        // Un id repetido no cancela ni devuelve el stock dos veces
+        ResumenCambioEstadosDTO resumen = pedidoService.actualizarEstados(
+                List.of(primero, segundo, primero), EstadosPedido.CANCELADO);
+
+        assertEquals(2, resumen.getActualizados());
+        assertEquals(0, resumen.getRechazados());
+        assertEquals(10, datos.stock(guitarra));
+        assertEquals(6, datos.stock(bajo));
+        assertEquals(0, unidadesVendidas(guitarra));
+        assertEquals(4, unidadesVendidas(bajo));
+        assertEquals(EstadosPedido.PENDIENTE, pedidoRepository.findById(conservado).orElseThrow().getEstadoActual());
+
+        // Cancelar otra vez es un rechazo y no toca el stock
+        ResumenCambioEstadosDTO repetido = pedidoService.actualizarEstados(List.of(primero), EstadosPedido.CANCELADO);
+        assertEquals(0, repetido.getActualizados());
+        assertEquals(10, datos.stock(guitarra));
+    }
+
+    @Test
+    void cambioDeVariosPedidosRechazaEstadosDesconocidos() {
+        assertThrows(IllegalArgumentException.class, () -> pedidoService.actualizarEstados(List.of(1L), "PERDIDO"));
+        assertThrows(IllegalArgumentException.class, () -> pedidoService.actualizarEstados(List.of(), EstadosPedido.ENVIADO));
+    }
+
+    private int unidadesVendidas(Instrumento instrumento) {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(unidades), 0) FROM ventas_diarias WHERE id_instrumento = ?",
+                Integer.class, instrumento.getIdInstrumento());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.RecepcionPedidosMetricasDTO;
+import com.example.instrumentos.dto.SolicitudPedidoDTO;
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.repository.PedidoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+class RecepcionPedidosServiceTest {
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Test
+    void grupoRevertidoSeConfirmaDeAUnoYSoloSeRechazaElQueFalla() throws Exception {
+        Instrumento conStock = datos.crearInstrumento("REC-1", 10);
+        Instrumento sinStock = datos.crearInstrumento("REC-2", 1);
+        long pedidosAntes = pedidoRepository.count();
+
+        // Una instancia propia, sin arrancar: los tres pedidos quedan en cola y se confirman en un mismo grupo
+        RecepcionPedidosService recepcion = new RecepcionPedidosService(pedidoService, transactionManager, 10, 10, 60);
+        try {
+            SolicitudPedidoDTO primera = recepcion.encolar(datos.pedido(conStock, 2));
+            SolicitudPedidoDTO fallida = recepcion.encolar(datos.pedido(sinStock, 5));
+            SolicitudPedidoDTO tercera = recepcion.encolar(datos.pedido(conStock, 3));
+            recepcion.alIniciar();
+
+            SolicitudPedidoDTO confirmadaPrimera = esperar(recepcion, primera);
+            SolicitudPedidoDTO rechazada = esperar(recepcion, fallida);
+            SolicitudPedidoDTO confirmadaTercera = esperar(recepcion, tercera);
+
+            assertEquals(RecepcionPedidosService.CONFIRMADO, confirmadaPrimera.getEstado());
+            assertEquals(RecepcionPedidosService.CONFIRMADO, confirmadaTercera.getEstado());
+            assertEquals(RecepcionPedidosService.RECHAZADO, rechazada.getEstado());
+            assertNotNull(rechazada.getError());
+            assertNull(rechazada.getIdPedido());
+
+            assertEquals(pedidosAntes + 2, pedidoRepository.count());
+            assertEquals(5, datos.stock(conStock));
+            assertEquals(1, datos.stock(sinStock));
+
+            // El grupo revertido no cuenta como lote: sólo las dos confirmaciones individuales
+            RecepcionPedidosMetricasDTO metricas = recepcion.getMetricas();
+            assertEquals(2, metricas.getConfirmados());
+            assertEquals(1, metricas.getRechazados());
+            assertEquals(2, metricas.getLotes());
+        } finally {
+            recepcion.detener();
+        }
+    }
+
+    private static SolicitudPedidoDTO esperar(RecepcionPedidosService recepcion, SolicitudPedidoDTO solicitud)
+            throws Exception {
+        return recepcion.esperarSolicitud(solicitud.getId(), TimeUnit.SECONDS.toMillis(30)).orElseThrow()
+                .get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.dto.PuntoPrecioDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeriePreciosReductorTest {
+
+    private static final long DESDE = 1_700_000_000_000L;
+
+    @Test
+    void laSerieQueEntraSeDevuelveCompleta() {
+        List<PuntoPrecioDTO> serie = serie(50, 1000);
+        SeriePreciosService.Reductor reductor = reducir(serie, 50);
+
+        assertEquals(serie, reductor.terminar());
+        assertEquals(50, reductor.getLeidos());
+    }
+
+    @Test
+    void nuncaDevuelveMasPuntosQueElMaximo() {
+        for (int maximo : new int[]{SeriePreciosService.PUNTOS_MINIMO, 6, 9, 200, 2000}) {
+            for (int cantidad : new int[]{maximo + 1, 10 * maximo + 3, 100_000}) {
+                List<PuntoPrecioDTO> resultado = reducir(serie(cantidad, 997), maximo).terminar();
+                assertTrue(resultado.size() <= maximo,
+                        cantidad + " puntos reducidos a " + resultado.size() + " con máximo " + maximo);
+            }
+        }
+    }
+
+    @Test
+    void conservaExtremosYOrdenPorFecha() {
+        List<PuntoPrecioDTO> serie = serie(100_000, 997);
+        // Un pico aislado en medio de la serie no puede perderse
+        serie.set(54_321, new PuntoPrecioDTO(serie.get(54_321).getFecha(), 99_999.0));
+
+        List<PuntoPrecioDTO> resultado = reducir(serie, 200).terminar();
+
+        assertEquals(serie.get(0), resultado.get(0));
+        assertEquals(serie.get(serie.size() - 1), resultado.get(resultado.size() - 1));
+        assertTrue(resultado.contains(serie.get(54_321)));
+        assertTrue(resultado.contains(serie.stream().min(Comparator.comparing(PuntoPrecioDTO::getPrecio)).orElseThrow()));
+        for (int i = 1; i < resultado.size(); i++) {
+            assertTrue(resultado.get(i).getFecha().getTime() > resultado.get(i - 1).getFecha().getTime());
+        }
+    }
+
+    private static SeriePreciosService.Reductor reducir(List<PuntoPrecioDTO> serie, int maximo) {
+        long hasta = serie.get(serie.size() - 1).getFecha().getTime();
+        SeriePreciosService.Reductor reductor = new SeriePreciosService.Reductor(maximo, DESDE, hasta);
+        serie.forEach(reductor::agregar);
+        return reductor;
+    }
+
+    // Un punto por minuto con un precio que oscila
+    private static List<PuntoPrecioDTO> serie(int cantidad, int periodo) {
+        List<PuntoPrecioDTO> puntos = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            puntos.add(new PuntoPrecioDTO(new Date(DESDE + i * 60_000L), 1000.0 + (i * 31L) % periodo));
+        }
+        return puntos;
+    }
+}
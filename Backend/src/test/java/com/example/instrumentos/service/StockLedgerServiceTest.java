@@ -0,0 +1,147 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.model.Pedido;
+import com.example.instrumentos.repository.StockCheckpointRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.instrumentos.DatosDePrueba.detalle;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "instrumentos.stock.ledger.habilitado=true",
+        // El volcado se dispara a mano desde los tests
+        "instrumentos.stock.ledger.volcado-ms=3600000"
+})
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+class StockLedgerServiceTest {
+
+    @TempDir
+    static Path directorio;
+
+    @DynamicPropertySource
+    static void diario(DynamicPropertyRegistry registry) {
+        registry.add("instrumentos.stock.ledger.directorio", () -> directorio.toString());
+    }
+
+    @Autowired
+    private StockLedgerService ledger;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private InstrumentoService instrumentoService;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Autowired
+    private StockCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private CatalogoCache catalogoCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void reservasConcurrentesNuncaDejanElStockNegativo() throws Exception {
+        Long id = datos.crearInstrumento("LDG-1", 20).getIdInstrumento();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+        AtomicInteger confirmados = new AtomicInteger();
+        AtomicInteger rechazados = new AtomicInteger();
+        List<Future<?>> pedidos = new ArrayList<>();
+        try {
+            for (int i = 0; i < 60; i++) {
+                pedidos.add(hilos.submit(() -> {
+                    try {
+                        pedidoService.save(datos.pedido(detalle(id, 1)));
+                        confirmados.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        rechazados.incrementAndGet();
+                    }
+                    assertTrue(ledger.disponible(id).getAsInt() >= 0);
+                }));
+            }
+            for (Future<?> pedido : pedidos) {
+                pedido.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        assertEquals(20, confirmados.get());
+        assertEquals(40, rechazados.get());
+        assertEquals(OptionalInt.of(0), ledger.disponible(id));
+        ledger.volcar();
+        assertEquals(0, datos.stock(id));
+    }
+
+    @Test
+    void rollbackDevuelveLaReserva() {
+        Long id = datos.crearInstrumento("LDG-2", 5).getIdInstrumento();
+
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        assertThrows(IllegalStateException.class, () -> transaccion.executeWithoutResult(status -> {
+            assertNull(ledger.reservar(new TreeMap<>(Map.of(id, 3))));
+            assertEquals(OptionalInt.of(2), ledger.disponible(id));
+            throw new IllegalStateException("falla después de reservar");
+        }));
+        assertEquals(OptionalInt.of(5), ledger.disponible(id));
+
+        // Un pedido que falla en otra línea también devuelve lo reservado del resto
+        Long otro = datos.crearInstrumento("LDG-3", 1).getIdInstrumento();
+        Pedido pedido = datos.pedido(detalle(id, 4));
+        pedido.getDetalles().add(detalle(otro, 2));
+        assertThrows(IllegalArgumentException.class, () -> pedidoService.save(pedido));
+        assertEquals(OptionalInt.of(5), ledger.disponible(id));
+        assertEquals(OptionalInt.of(1), ledger.disponible(otro));
+
+        ledger.volcar();
+        assertEquals(5, datos.stock(id));
+    }
+
+    @Test
+    void despuesDeReiniciarSeReconstruyeDesdeElCheckpointYElDiario() {
+        Long id = datos.crearInstrumento("LDG-4", 10).getIdInstrumento();
+        pedidoService.save(datos.pedido(detalle(id, 3)));
+        ledger.volcar();
+        assertEquals(7, datos.stock(id));
+
+        // Cambios posteriores al checkpoint: sólo están en el diario
+        pedidoService.save(datos.pedido(detalle(id, 2)));
+        instrumentoService.reponerStock(id, 4);
+        assertEquals(OptionalInt.of(9), ledger.disponible(id));
+        assertEquals(7, datos.stock(id));
+
+        // Otra instancia sobre la misma base y el mismo diario, como al arrancar de nuevo (no se detiene:
+        // su volcado borraría los segmentos que sigue usando la instancia del contexto)
+        StockLedgerService reiniciado = new StockLedgerService(true, directorio.toString(), jdbcTemplate,
+                checkpointRepository, catalogoCache, transactionManager);
+        assertEquals(OptionalInt.of(9), reiniciado.disponible(id));
+
+        ledger.volcar();
+        assertEquals(9, datos.stock(id));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.repository.PedidoRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+class VencimientoPedidosServiceTest {
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void venceLosMasViejosPorLotesHastaElMaximoPorEjecucion() {
+        Instrumento instrumento = datos.crearInstrumento("VTO-1", 10);
+        List<Long> viejos = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Long id = pedidoService.save(datos.pedido(instrumento, 1)).getIdPedido();
+            // Más viejos primero: el primero es el de fecha más antigua
+            jdbcTemplate.update("UPDATE pedidos SET fecha = ? WHERE id_pedido = ?",
+                    new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10 - i)), id);
+            viejos.add(id);
+        }
+        Long reciente = pedidoService.save(datos.pedido(instrumento, 1)).getIdPedido();
+        assertEquals(2, datos.stock(instrumento));
+
+        PedidoRepository repositorio = mock(PedidoRepository.class, delegatesTo(pedidoRepository));
+        VencimientoPedidosService vencimiento = new VencimientoPedidosService(repositorio, pedidoService,
+                transactionManager, true, 60, 2, 0, 5);
+
+        // Lotes de 2, 2 y 1: el último se achica para no pasar el máximo
+        assertEquals(5, vencimiento.vencer());
+        ArgumentCaptor<Limit> limites = ArgumentCaptor.forClass(Limit.class);
+        verify(repositorio, times(3)).findAnterioresParaActualizar(eq(EstadosPedido.PENDIENTE), any(), limites.capture());
+        assertEquals(List.of(2, 2, 1), limites.getAllValues().stream().map(Limit::max).toList());
+        assertEquals(List.of(EstadosPedido.CANCELADO), estados(viejos.subList(0, 5)));
+        assertEquals(List.of(EstadosPedido.PENDIENTE), estados(viejos.subList(5, 7)));
+        assertEquals(7, datos.stock(instrumento));
+
+        // Lo que quedó se vence en la ejecución siguiente; el pedido reciente no se toca
+        assertEquals(2, vencimiento.vencer());
+        assertEquals(List.of(EstadosPedido.CANCELADO), estados(viejos));
+        assertEquals(List.of(EstadosPedido.PENDIENTE), estados(List.of(reciente)));
+        assertEquals(9, datos.stock(instrumento));
+    }
+
+    // Estados distintos de los pedidos, en orden de aparición
+    private List<String> estados(List<Long> ids) {
+        return ids.stream()
+                .map(id -> pedidoRepository.findById(id).orElseThrow().getEstadoActual())
+                .distinct().toList();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.instrumentos.service;
+
+import com.example.instrumentos.DatosDePrueba;
+import com.example.instrumentos.model.CategoriaInstrumento;
+import com.example.instrumentos.model.Instrumento;
+import com.example.instrumentos.model.Pedido;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.instrumentos.DatosDePrueba.detalle;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import(DatosDePrueba.class)
+class VentasDiariasServiceTest {
+
+    private static final String FILAS = "SELECT id_instrumento, ingresos, unidades, pedidos, primeros_del_pedido, " +
+            "primeros_de_categoria FROM ventas_diarias WHERE dia = :dia AND id_instrumento IN (:ids) " +
+            "AND unidades <> 0 ORDER BY id_instrumento";
+
+    @Autowired
+    private VentasDiariasService ventasDiariasService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private CategoriaService categoriaService;
+
+    @Autowired
+    private DatosDePrueba datos;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Test
+    void acumuladoIncrementalCoincideConLaReconstruccion() {
+        CategoriaInstrumento cuerdas = categoriaService.save(new CategoriaInstrumento("Ventas cuerdas"));
+        CategoriaInstrumento vientos = categoriaService.save(new CategoriaInstrumento("Ventas vientos"));
+        Instrumento guitarra = datos.crearInstrumento("VEN-1", cuerdas, 100, 120.5);
+        Instrumento bajo = datos.crearInstrumento("VEN-2", cuerdas, 100, 80.25);
+        Instrumento flauta = datos.crearInstrumento("VEN-3", vientos, 100, 45.0);
+
+        // sumar: pedidos con varias categorías, con un instrumento repetido en dos líneas
+        pedidoService.save(datos.pedido(detalle(guitarra, 1), detalle(bajo, 2), detalle(flauta, 1)));
+        Pedido soloBajo = pedidoService.save(datos.pedido(detalle(bajo, 1)));
+        Pedido mixto = pedidoService.save(datos.pedido(detalle(bajo, 1), detalle(flauta, 2), detalle(bajo, 1)));
+        Pedido aEliminar = pedidoService.save(datos.pedido(detalle(flauta, 3), detalle(guitarra, 1)));
+        pedidoService.save(datos.pedido(detalle(flauta, 1)));
+
+        // restar (cancelación individual), restarPedidos (cancelación en lote) y restar al eliminar
+        pedidoService.actualizarEstadoPedido(mixto.getIdPedido(), EstadosPedido.CANCELADO);
+        pedidoService.actualizarEstados(List.of(soloBajo.getIdPedido()), EstadosPedido.CANCELADO);
+        pedidoService.deleteById(aEliminar.getIdPedido());
+
+        LocalDate hoy = LocalDate.now();
+        List<Long> ids = List.of(guitarra.getIdInstrumento(), bajo.getIdInstrumento(), flauta.getIdInstrumento());
+        List<Map<String, Object>> incremental = filas(hoy, ids);
+
+        ventasDiariasService.reconstruir(hoy, hoy);
+
+        assertEquals(3, incremental.size());
+        assertEquals(filas(hoy, ids), incremental);
+    }
+
+    @Test
+    void reconstruccionRechazaRangosMayoresAlMaximo() {
+        LocalDate hoy = LocalDate.now();
+        assertThrows(IllegalArgumentException.class, () -> ventasDiariasService.reconstruir(hoy.minusYears(5), hoy));
+    }
+
+    private List<Map<String, Object>> filas(LocalDate dia, List<Long> ids) {
+        return jdbcTemplate.queryForList(FILAS, Map.of("dia", java.sql.Date.valueOf(dia), "ids", ids));
+    }
+}
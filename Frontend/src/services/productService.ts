@@ -2,6 +2,8 @@ import api from "./api";
 import { Instrumento } from "../models/Instrumento";
 
 export const getProductos = async (): Promise<Instrumento[]> => {
-  const response = await api.get<Instrumento[]>("/instrumentos");
+  const response = await api.get<Instrumento[]>("/instrumentos", {
+    params: { todos: true },
+  });
   return response.data;
 };